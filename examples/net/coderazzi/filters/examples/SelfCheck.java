@@ -0,0 +1,619 @@
+/**
+ * Author:  Luis M Pena  ( lu@coderazzi.net )
+ * License: MIT License
+ *
+ * Copyright (c) 2007 Luis M. Pena  -  lu@coderazzi.net
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.coderazzi.filters.examples;
+
+import java.text.ParseException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import javax.swing.event.TableModelEvent;
+import javax.swing.table.AbstractTableModel;
+
+import net.coderazzi.filters.AndFilter;
+import net.coderazzi.filters.BaseFilter;
+import net.coderazzi.filters.artifacts.RowFilter;
+import net.coderazzi.filters.artifacts.RowSelection;
+import net.coderazzi.filters.artifacts.TableModelFilter;
+import net.coderazzi.filters.parser.FilterTextParser;
+import net.coderazzi.filters.parser.Types;
+
+
+/**
+ * <p>Self checking example, exercising on random data the parts of the filtering that keep
+ * state between operations, and comparing their results with naive implementations:</p>
+ * <ul>
+ *   <li>{@link RowSelection}, against a list of booleans and an int[] mapping.</li>
+ *   <li>The wildcard filters created by the {@link FilterTextParser}, against the equivalent
+ *     {@link Pattern}; and their narrowing checks, verifying that a narrower filter never
+ *     includes a value excluded by the previous one.</li>
+ *   <li>The {@link TableModelFilter}, handling incrementally the insertions, deletions and
+ *     updates in the model, and reusing the cached evaluations of the sub filters of an
+ *     {@link AndFilter} -updated to the model changes- when the filter is reapplied; with the
+ *     column cache, indexes and parallel evaluation enabled and disabled on the way.</li>
+ * </ul>
+ * <p>It prints the number of checks performed, or throws an exception on the first mismatch.
+ * A seed can be given as argument, to repeat a failed run.</p>
+ */
+public class SelfCheck {
+
+    /** Characters in the values of the wildcard checks */
+    private static final String VALUE_CHARS = "abAB.*?\\\n";
+
+    /** Tokens in the wildcard expressions */
+    private static final String[] EXPRESSION_TOKENS = {
+            "a", "b", "A", ".", "*", "?", "*", "\\*", "\\?", "\\\\", "\\.", "\\a"
+        };
+
+    /** Characters in the names of the model */
+    private static final String NAME_CHARS = "abAB.";
+
+    /** Operators on the numbers of the model */
+    private static final String[] NUMBER_OPERATORS = { ">", ">=", "<", "<=", "=", "<>" };
+
+    private static Random random;
+    private static int checks;
+
+    public static void main(String[] args) throws Exception {
+        long seed = (args.length > 0) ? Long.parseLong(args[0]) : System.currentTimeMillis();
+        random = new Random(seed);
+        checkRowSelection();
+        checkWildcards();
+        checkIncrementalFiltering(false, 0);
+        checkIncrementalFiltering(true, 0);
+        checkIncrementalFiltering(true, 100);
+        System.out.println(checks + " checks ok (seed " + seed + ")");
+    }
+
+
+    /**
+     * Applies random operations on row selections, verifying after each one all the rows,
+     * ranks and positions
+     */
+    private static void checkRowSelection() {
+        for (int round = 0; round < 200; round++) {
+            int size = random.nextInt(700);
+            RowSelection selection = new RowSelection(size);
+            List<Boolean> naive = new ArrayList<Boolean>(Collections.nCopies(size, Boolean.FALSE));
+            for (int step = 0; step < 40; step++) {
+                int n = naive.size();
+                int row = random.nextInt(n + 1);
+                int count = random.nextInt(n - row + 1);
+                switch (random.nextInt(10)) {
+
+                    case 0:
+                        if (row < n) {
+                            selection.set(row);
+                            naive.set(row, Boolean.TRUE);
+                        }
+
+                        break;
+
+                    case 1:
+                        if (row < n) {
+                            selection.clear(row);
+                            naive.set(row, Boolean.FALSE);
+                        }
+
+                        break;
+
+                    case 2:
+                        selection.setRange(row, row + count);
+                        for (int i = row; i < (row + count); i++) {
+                            naive.set(i, Boolean.TRUE);
+                        }
+
+                        break;
+
+                    case 3:
+                        count = random.nextInt(130);
+                        selection.insert(row, count);
+                        naive.addAll(row, Collections.nCopies(count, Boolean.FALSE));
+
+                        break;
+
+                    case 4:
+                        selection.remove(row, count);
+                        naive.subList(row, row + count).clear();
+
+                        break;
+
+                    case 5:
+                    case 6:
+                    case 7: {
+                        List<Boolean> otherNaive = new ArrayList<Boolean>();
+                        RowSelection other = createRandomSelection(n, otherNaive);
+                        int operation = random.nextInt(3);
+                        for (int i = 0; i < n; i++) {
+                            boolean a = naive.get(i);
+                            boolean b = otherNaive.get(i);
+                            naive.set(i, (operation == 0) ? (a && b)
+                                                          : ((operation == 1) ? (a || b)
+                                                                              : (a && !b)));
+                        }
+                        if (operation == 0) {
+                            selection.and(other);
+                        } else if (operation == 1) {
+                            selection.or(other);
+                        } else {
+                            selection.andNot(other);
+                        }
+                        checkRowSelection(other, otherNaive);
+                    }
+
+                        break;
+
+                    case 8:
+                        selection.invert();
+                        for (int i = 0; i < n; i++) {
+                            naive.set(i, !naive.get(i));
+                        }
+
+                        break;
+
+                    default:
+                        if (random.nextBoolean()) {
+                            selection.setAll();
+                            Collections.fill(naive, Boolean.TRUE);
+                        } else {
+                            selection = new RowSelection(selection);
+                        }
+
+                        break;
+                }
+                checkRowSelection(selection, naive);
+            }
+        }
+    }
+
+    private static RowSelection createRandomSelection(int size, List<Boolean> naive) {
+        RowSelection ret = new RowSelection(size);
+        int density = random.nextInt(5);
+        for (int i = 0; i < size; i++) {
+            boolean set = random.nextInt(4) < density;
+            if (set) {
+                ret.set(i);
+            }
+            naive.add(set);
+        }
+
+        return ret;
+    }
+
+    private static void checkRowSelection(RowSelection selection, List<Boolean> naive) {
+        int size = naive.size();
+        int[] mapping = new int[size];
+        int count = 0;
+        check(selection.getSize() == size, "row selection size");
+        for (int row = 0; row < size; row++) {
+            check(selection.rank(row) == count, "rank of row " + row);
+            check(selection.get(row) == naive.get(row), "row " + row);
+            if (naive.get(row)) {
+                mapping[count++] = row;
+            }
+        }
+        check(selection.getCount() == count, "row selection count");
+        for (int row = 0; row < size; row++) {
+            int next = naive.subList(row, size).indexOf(Boolean.TRUE);
+            check(selection.nextSetBit(row) == ((next < 0) ? -1 : (row + next)),
+                "next selected row after " + row);
+        }
+        for (int position = 0; position < count; position++) {
+            check(selection.select(position) == mapping[position], "position " + position);
+        }
+        for (int i = 0; (i < 20) && (count > 0); i++) {
+            int position = random.nextInt(count);
+            check(selection.select(position) == mapping[position], "position " + position);
+        }
+    }
+
+
+    /**
+     * Compares the wildcard filters with the equivalent regular expressions, and checks that
+     * filters declared narrower than others do not include any value excluded by them
+     */
+    private static void checkWildcards() throws ParseException {
+        WildcardModel model = new WildcardModel();
+        FilterTextParser parser = new FilterTextParser();
+        parser.setTableModel(model);
+        for (int round = 0; round < 2000; round++) {
+            boolean ignoreCase = random.nextBoolean();
+            String operator = random.nextBoolean() ? "~ " : "!~ ";
+            parser.setIgnoreCase(ignoreCase);
+            String general = createRandomExpression();
+            String specific = random.nextBoolean() ? (general + createRandomExpression())
+                                                   : createRandomExpression();
+            RowFilter generalFilter = parser.parseText(operator + general, 0);
+            RowFilter specificFilter = parser.parseText(operator + specific, 0);
+            Pattern generalPattern = createPattern(general, ignoreCase);
+            Pattern specificPattern = createPattern(specific, ignoreCase);
+            boolean narrower = specificFilter.isNarrowerThan(generalFilter);
+            check(parser.parseText(operator + general, 0).isNarrowerThan(generalFilter),
+                "'" + general + "' narrower than itself");
+
+            List<String> values = new ArrayList<String>();
+            for (int i = 0; i < 20; i++) {
+                values.add(createRandomText(6, VALUE_CHARS));
+                values.add(createMatchingText(general, ignoreCase));
+                values.add(createMatchingText(specific, ignoreCase));
+            }
+            boolean equals = operator.startsWith("~");
+            for (String value : values) {
+                model.value = value;
+                boolean generalMatch = generalFilter.include(model.entry);
+                boolean specificMatch = specificFilter.include(model.entry);
+                check(generalMatch == (equals == generalPattern.matcher(value).matches()),
+                    operator + "'" + general + "' on '" + value + "'");
+                check(specificMatch == (equals == specificPattern.matcher(value).matches()),
+                    operator + "'" + specific + "' on '" + value + "'");
+                check(!narrower || !specificMatch || generalMatch,
+                    operator + "'" + specific + "' narrower than '" + general + "' on '" + value
+                    + "'");
+            }
+        }
+    }
+
+    /**
+     * Translates a wildcard expression into the equivalent regular expression
+     */
+    private static Pattern createPattern(String expression, boolean ignoreCase) {
+        StringBuilder sb = new StringBuilder();
+        boolean escaped = false;
+        for (char c : expression.toCharArray()) {
+            if (!escaped && (c == '\\')) {
+                escaped = true;
+            } else {
+                if (!escaped && (c == '*')) {
+                    sb.append(".*");
+                } else if (!escaped && (c == '?')) {
+                    sb.append('.');
+                } else {
+                    sb.append(Pattern.quote(String.valueOf(c)));
+                }
+                escaped = false;
+            }
+        }
+
+        return Pattern.compile(sb.toString(), ignoreCase ? Pattern.CASE_INSENSITIVE : 0);
+    }
+
+    private static String createRandomExpression() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = random.nextInt(5); i > 0; i--) {
+            sb.append(EXPRESSION_TOKENS[random.nextInt(EXPRESSION_TOKENS.length)]);
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * Returns a text matched by the given wildcard expression
+     */
+    private static String createMatchingText(String expression, boolean ignoreCase) {
+        StringBuilder sb = new StringBuilder();
+        boolean escaped = false;
+        for (char c : expression.toCharArray()) {
+            if (!escaped && (c == '\\')) {
+                escaped = true;
+            } else {
+                if (!escaped && (c == '*')) {
+                    sb.append(createRandomText(3, NAME_CHARS));
+                } else if (!escaped && (c == '?')) {
+                    sb.append(createRandomText(1, NAME_CHARS));
+                } else if (ignoreCase && random.nextBoolean()) {
+                    sb.append(Character.toUpperCase(c));
+                } else {
+                    sb.append(c);
+                }
+                escaped = false;
+            }
+        }
+
+        return sb.toString();
+    }
+
+    private static String createRandomText(int maxLength, String chars) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = random.nextInt(maxLength + 1); i > 0; i--) {
+            sb.append(chars.charAt(random.nextInt(chars.length())));
+        }
+
+        return sb.toString();
+    }
+
+
+    /**
+     * Applies random changes to a model and to the filters on it, verifying after each one the
+     * rows included by the {@link TableModelFilter}
+     *
+     * @param  toggles            whether the column cache and indexes are enabled and disabled
+     *                            on the way
+     * @param  parallelThreshold  rows to evaluate the filter in parallel, or 0
+     */
+    private static void checkIncrementalFiltering(boolean toggles, int parallelThreshold)
+        throws ParseException {
+        CheckModel model = new CheckModel();
+        model.insert(0, 300);
+
+        FilterTextParser parser = new FilterTextParser();
+        parser.setTableModel(model);
+        // as configured by the header, to compare the numbers as such
+        new Types().configure(parser);
+        CheckedFilter nameFilter = new CheckedFilter();
+        CheckedFilter numberFilter = new CheckedFilter();
+        String nameExpression = createRandomExpression();
+        Pattern namePattern = createPattern(nameExpression, false);
+        String numberOperator = ">";
+        int numberLimit = 50;
+        nameFilter.filter = parser.parseText("~ " + nameExpression, 0);
+        numberFilter.filter = parser.parseText(numberOperator + " " + numberLimit, 1);
+        AndFilter filter = new AndFilter(nameFilter, numberFilter);
+
+        TableModelFilter modelFilter = new TableModelFilter(model);
+        modelFilter.setFilterOnUpdates(true);
+        modelFilter.setParallelThreshold(parallelThreshold);
+        modelFilter.setColumnCache(toggles);
+        modelFilter.setRowFilter(filter);
+
+        for (int step = 0; step < 1500; step++) {
+            int size = model.rows.size();
+            int row = random.nextInt(size + 1);
+            int count = Math.min(size - row, 1 + random.nextInt(40));
+            switch (random.nextInt(11)) {
+
+                case 0:
+                case 1:
+                    model.insert(row, 1 + random.nextInt(60));
+
+                    break;
+
+                case 2:
+                    if (count > 0) {
+                        model.delete(row, row + count - 1);
+                    }
+
+                    break;
+
+                case 3:
+                case 4:
+                    if (count > 0) {
+                        model.update(row, row + count - 1, random.nextInt(3) - 1);
+                    }
+
+                    break;
+
+                case 5: {
+                    String expression = random.nextBoolean()
+                        ? (nameExpression + createRandomExpression()) : createRandomExpression();
+                    RowFilter previous = nameFilter.filter;
+                    nameExpression = expression;
+                    namePattern = createPattern(expression, false);
+                    nameFilter.setFilter(parser.parseText("~ " + expression, 0));
+                    modelFilter.setRowFilter(filter, nameFilter.filter.isNarrowerThan(previous));
+                }
+
+                    break;
+
+                case 6:
+                    numberOperator = NUMBER_OPERATORS[random.nextInt(NUMBER_OPERATORS.length)];
+                    numberLimit = random.nextInt(100);
+                    numberFilter.setFilter(parser.parseText(numberOperator + " " + numberLimit,
+                            1));
+                    modelFilter.setRowFilter(filter);
+
+                    break;
+
+                case 7:
+                    // reevaluates the cached sub filter selections, updated to the model changes
+                    modelFilter.setRowFilter(filter);
+
+                    break;
+
+                case 8:
+                    for (int i = random.nextInt(5); i > 0; i--) {
+                        model.rows.set(random.nextInt(size), model.createRow());
+                    }
+                    model.fireTableDataChanged();
+
+                    break;
+
+                case 9:
+                    if (toggles) {
+                        modelFilter.setColumnCache(!modelFilter.isColumnCache());
+                    }
+
+                    break;
+
+                default:
+                    if (toggles) {
+                        modelFilter.setColumnIndexes(random.nextBoolean());
+                        modelFilter.setTrigramIndexes(random.nextBoolean());
+                    }
+
+                    break;
+            }
+
+            List<Integer> expected = new ArrayList<Integer>();
+            for (int i = 0; i < model.rows.size(); i++) {
+                Object[] values = model.rows.get(i);
+                if (namePattern.matcher((String) values[0]).matches()
+                        && compare(numberOperator, (Integer) values[1], numberLimit)) {
+                    expected.add(i);
+                }
+            }
+            check(modelFilter.getRowCount() == expected.size(), "filtered rows at step " + step);
+            for (int i = 0; i < expected.size(); i++) {
+                int modelRow = expected.get(i);
+                check(modelFilter.convertRowIndexToModel(i) == modelRow,
+                    "view row " + i + " at step " + step);
+                check(modelFilter.convertRowIndexToView(modelRow) == i,
+                    "model row " + modelRow + " at step " + step);
+                check(modelFilter.getValueAt(i, 0) == model.rows.get(modelRow)[0],
+                    "value at view row " + i + " at step " + step);
+            }
+        }
+    }
+
+    private static boolean compare(String operator, int value, int limit) {
+        if (">".equals(operator)) {
+            return value > limit;
+        }
+        if (">=".equals(operator)) {
+            return value >= limit;
+        }
+        if ("<".equals(operator)) {
+            return value < limit;
+        }
+        if ("<=".equals(operator)) {
+            return value <= limit;
+        }
+        if ("=".equals(operator)) {
+            return value == limit;
+        }
+
+        return value != limit;
+    }
+
+    private static void check(boolean condition, String message) {
+        checks++;
+        if (!condition) {
+            throw new IllegalStateException("Mismatch on " + message);
+        }
+    }
+
+
+    /**
+     * Sub filter delegating on a filter created by the parser, as the filter editors do
+     */
+    static class CheckedFilter extends BaseFilter {
+        RowFilter filter;
+
+        void setFilter(RowFilter filter) {
+            this.filter = filter;
+            reportFilterUpdatedToObservers();
+        }
+
+        @Override public boolean include(RowFilter.Entry entry) {
+            return filter.include(entry);
+        }
+
+        @Override public void include(RowFilter.Rows rows, RowSelection candidates,
+                                      RowSelection result) {
+            filter.include(rows, candidates, result);
+        }
+    }
+
+
+    /**
+     * Model with a String and an Integer column, notifying fine grained changes
+     */
+    static class CheckModel extends AbstractTableModel {
+
+        private static final long serialVersionUID = 2046917371554163917L;
+
+        List<Object[]> rows = new ArrayList<Object[]>();
+
+        Object[] createRow() {
+            return new Object[] { createRandomText(6, NAME_CHARS), random.nextInt(100) };
+        }
+
+        void insert(int row, int count) {
+            for (int i = 0; i < count; i++) {
+                rows.add(row, createRow());
+            }
+            fireTableRowsInserted(row, row + count - 1);
+        }
+
+        void delete(int firstRow, int lastRow) {
+            rows.subList(firstRow, lastRow + 1).clear();
+            fireTableRowsDeleted(firstRow, lastRow);
+        }
+
+        /** Updates the given column -or all, if negative- on the given rows */
+        void update(int firstRow, int lastRow, int column) {
+            for (int i = firstRow; i <= lastRow; i++) {
+                Object[] values = createRow();
+                if (column >= 0) {
+                    values[1 - column] = rows.get(i)[1 - column];
+                }
+                rows.set(i, values);
+            }
+            fireTableChanged(new TableModelEvent(this, firstRow, lastRow,
+                    (column < 0) ? TableModelEvent.ALL_COLUMNS : column));
+        }
+
+        @Override public Class<?> getColumnClass(int columnIndex) {
+            return (columnIndex == 0) ? String.class : Integer.class;
+        }
+
+        public int getColumnCount() {
+            return 2;
+        }
+
+        public int getRowCount() {
+            return rows.size();
+        }
+
+        public Object getValueAt(int rowIndex, int columnIndex) {
+            return rows.get(rowIndex)[columnIndex];
+        }
+    }
+
+
+    /**
+     * Model with a single String value, to evaluate the wildcard filters
+     */
+    static class WildcardModel extends AbstractTableModel {
+
+        private static final long serialVersionUID = -3160386012858436870L;
+
+        String value;
+
+        RowFilter.Entry entry = new RowFilter.Entry() {
+                @Override public Object getValue(int index) {
+                    return value;
+                }
+            };
+
+        @Override public Class<?> getColumnClass(int columnIndex) {
+            return String.class;
+        }
+
+        public int getColumnCount() {
+            return 1;
+        }
+
+        public int getRowCount() {
+            return 1;
+        }
+
+        public Object getValueAt(int rowIndex, int columnIndex) {
+            return value;
+        }
+    }
+}
@@ -25,7 +25,12 @@
 
 package net.coderazzi.filters;
 
+import java.util.HashMap;
+import java.util.Map;
+
+import net.coderazzi.filters.artifacts.FilterProgram;
 import net.coderazzi.filters.artifacts.RowFilter;
+import net.coderazzi.filters.artifacts.RowSelection;
 
 
 /**
@@ -44,13 +49,84 @@ public class AndFilter extends ComposedFilter {
     }
 
     /**
+     * Evaluates first the sub filters more likely to exclude the row at a lower cost
+     *
      * @see  IFilter#include(RowFilter.Entry)
      */
 	@Override public boolean include(RowFilter.Entry rowEntry) {
+        return !includeUntil(rowEntry, false);
+    }
+
+    /**
+     * Intersects the (cached) evaluations of the sub filters, starting with the more selective
+     * ones, and skipping the remaining sub filters once no row is left
+     *
+     * @see  RowFilter#include(RowFilter.Rows, RowSelection, RowSelection)
+     */
+    @Override public void include(RowFilter.Rows rows, RowSelection candidates,
+                                  RowSelection result) {
+        if (candidates == null) {
+            result.setAll();
+        } else {
+            result.or(candidates);
+        }
+        for (IFilter filter : getOrderedFilters(false)) {
+            RowSelection selection = getSelection(filter, rows);
+            if (selection == null)
+                return;
+            result.and(selection);
+            if (result.getCount() == 0)
+                return;
+        }
+    }
+
+    /**
+     * The intersection includes every row if all the sub filters do
+     *
+     * @see  RowFilter#includesAll()
+     */
+    @Override public boolean includesAll() {
         for (IFilter filter : filters)
-            if (!filter.include(rowEntry))
+            if (!(filter instanceof RowFilter) || !((RowFilter) filter).includesAll())
                 return false;
 
         return true;
     }
+
+    /**
+     * Adds to the conjunction the instructions of the sub filters, each one compiled once. The
+     * parts left uncompiled, and the sub filters that cannot be compiled, are added as a single
+     * filter, evaluated as {@link #include(RowFilter.Entry)} does, in the order given by their
+     * cost and selectivity.
+     *
+     * @see  RowFilter#compile(FilterProgram)
+     */
+    @Override public void compile(FilterProgram program) {
+        final Map<IFilter, RowFilter> compiled = new HashMap<IFilter, RowFilter>();
+        boolean uncompiled = false;
+        for (IFilter filter : filters) {
+            if (filter instanceof RowFilter) {
+                RowFilter rest = FilterProgram.compile((RowFilter) filter).compileInstructions(
+                        program);
+                compiled.put(filter, rest);
+                uncompiled |= (rest != null);
+            } else {
+                uncompiled = true;
+            }
+        }
+        if (uncompiled) {
+            program.addFilter(new RowFilter() {
+                    @Override public boolean include(Entry entry) {
+                        return !includeUntil(entry, false, compiled);
+                    }
+                });
+        }
+    }
+
+    /**
+     * Narrowing any sub filter narrows the intersection
+     */
+    @Override protected boolean isNarrowedBySubFilters() {
+        return true;
+    }
 }
@@ -43,6 +43,9 @@ abstract public class BaseFilter extends RowFilter implements IFilter {
     /** The set of currently subscribed observers */
     protected Set<IFilterObserver> filterObservers = new HashSet<IFilterObserver>();
 
+    /** Set while reporting an update that can only exclude rows previously included */
+    private boolean narrowingUpdate;
+
     /**
      * Detaches the instance from any observer
      */
@@ -76,7 +79,33 @@ abstract public class BaseFilter extends RowFilter implements IFilter {
      * Method to be called by subclasses to report to the observers that the filter has changed
      */
     protected void reportFilterUpdatedToObservers() {
-        for (IFilterObserver obs : new ArrayList<IFilterObserver>(filterObservers))
-            obs.filterUpdated(this);
+        reportFilterUpdatedToObservers(false);
+    }
+
+    /**
+     * Method to be called by subclasses to report to the observers that the filter has changed,
+     * and that it can now only exclude rows previously included
+     */
+    protected void reportFilterNarrowedToObservers() {
+        reportFilterUpdatedToObservers(true);
+    }
+
+    /**
+     * Returns true if the update being reported to the observers can only exclude rows
+     * previously included; observers can then evaluate the filter just on those rows.
+     */
+    public boolean isNarrowingUpdate() {
+        return narrowingUpdate;
+    }
+
+    private void reportFilterUpdatedToObservers(boolean narrowing) {
+        boolean previous = narrowingUpdate;
+        narrowingUpdate = narrowing;
+        try {
+            for (IFilterObserver obs : new ArrayList<IFilterObserver>(filterObservers))
+                obs.filterUpdated(this);
+        } finally {
+            narrowingUpdate = previous;
+        }
     }
 }
@@ -25,21 +25,68 @@
 
 package net.coderazzi.filters;
 
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.Set;
 
+import net.coderazzi.filters.artifacts.RowFilter;
+import net.coderazzi.filters.artifacts.RowSelection;
+
 
 /**
  * <p>Abstract parent class to support the composition of multiple filters.</p>
  *
  * <p>The exact composition semantics (and / or / not) are not defined.</p>
  *
+ * <p>When evaluated on a whole set of rows, the result of each sub filter is kept as a bitset,
+ * discarded as soon as the sub filter reports any change. Subclasses combine these results, so
+ * that only the updated sub filters are evaluated again. If the sub filter reports a narrowing
+ * update, it is evaluated again only on the rows it included. If the rows change, the bitset is
+ * updated, evaluating the sub filter only on the inserted and updated rows -or discarded, if the
+ * rows cannot report their changes-.</p>
+ *
+ * <p>The cost and pass rate of each sub filter are measured on those evaluations, and sampled
+ * on the evaluations of single rows, so that subclasses can evaluate first the sub filters
+ * more likely to decide the result at a lower cost. The measured costs are compared only by
+ * their order of magnitude -in powers of two-, and sub filters in the same magnitude are
+ * evaluated in the order they were added, so that timing noise does not reorder them. The
+ * order is frozen between explicit rebuilds: when a sub filter is added, removed or updated,
+ * or evaluated on a whole set of rows. The evaluations of single rows reorder the sub filters
+ * only once, after a fixed number of samples, if the order was built while some sub filter had
+ * no statistics yet.</p>
+ *
  * @author  Luis M Pena - lu@coderazzi.net
  */
 abstract public class ComposedFilter extends BaseFilter implements IFilterObserver {
 
-    /** Set of associated IFilters */
-    protected Set<IFilter> filters = new HashSet<IFilter>();
+    /** One in (SAMPLE_MASK + 1) single row evaluations measures every sub filter */
+    private static final int SAMPLE_MASK = 31;
+
+    /** Number of samples to measure the sub filters without statistics in the order */
+    private static final int SAMPLES_PER_ORDER = 256;
+
+    /** Set of associated IFilters, in the order they were added */
+    protected Set<IFilter> filters = new LinkedHashSet<IFilter>();
+
+    /** Last evaluation of each sub filter on a whole set of rows */
+    private Map<IFilter, CachedSelection> selections = new HashMap<IFilter, CachedSelection>();
+
+    /** Sub filters in evaluation order, rebuilt on demand; null if obsolete */
+    private volatile CachedSelection[] order;
+
+    /** Result that stops the evaluation of the sub filters, for the current order */
+    private boolean orderResult;
+
+    /** Samples taken since the order was built, if it includes sub filters without statistics */
+    private int orderSamples;
+
+    /** Whether the current order was built with statistics for every sub filter */
+    private boolean orderMeasured;
+
+    /** Number of single row evaluations, used to sample them */
+    private int evaluations;
 
     /**
      * Constructor built up out of none or more {@link net.coderazzi.filters.IFilter}
@@ -54,7 +101,11 @@ abstract public class ComposedFilter extends BaseFilter implements IFilterObserv
      */
     @Override public void detach() {
         super.detach();
-        filters.clear();
+        synchronized (selections) {
+            filters.clear();
+            selections.clear();
+            order = null;
+        }
     }
 
     /**
@@ -63,7 +114,15 @@ abstract public class ComposedFilter extends BaseFilter implements IFilterObserv
      */
     public void addFilter(IFilter... filtersToAdd) {
         for (IFilter observable : filtersToAdd) {
-            if (filters.add(observable)) {
+            boolean added;
+            // the filters are iterated under this lock when the order is rebuilt
+            synchronized (selections) {
+                added = filters.add(observable);
+                if (added) {
+                    order = null;
+                }
+            }
+            if (added) {
                 observable.addFilterObserver(this);
             }
         }
@@ -74,7 +133,15 @@ abstract public class ComposedFilter extends BaseFilter implements IFilterObserv
      * subscribed to receive filter events
      */
     public void removeFilter(IFilter filter) {
-        if (filters.remove(filter)) {
+        boolean removed;
+        synchronized (selections) {
+            removed = filters.remove(filter);
+            if (removed) {
+                selections.remove(filter);
+                order = null;
+            }
+        }
+        if (removed) {
             reportFilterUpdatedToObservers();
         }
     }
@@ -83,14 +150,309 @@ abstract public class ComposedFilter extends BaseFilter implements IFilterObserv
      * Returns all {@link net.coderazzi.filters.IFilter} instances previously added.
      */
     public Set<IFilter> getFilterObservables() {
-        return new HashSet<IFilter>(filters);
+        synchronized (selections) {
+            return new LinkedHashSet<IFilter>(filters);
+        }
     }
 
     /**
      * @see  IFilterObserver#filterUpdated(IFilter)
      */
     public void filterUpdated(IFilter producer) {
-        reportFilterUpdatedToObservers();
+        boolean narrowing = (producer instanceof BaseFilter) &&
+            ((BaseFilter) producer).isNarrowingUpdate();
+        synchronized (selections) {
+            CachedSelection cached = selections.get(producer);
+            if (cached != null) {
+                cached.resetStatistics();
+                order = null;
+                cached.version++;
+                if (!narrowing) {
+                    cached.candidates = null;
+                } else if (cached.selection != null) {
+                    cached.candidates = cached.selection;
+                }
+                cached.selection = null;
+            }
+        }
+        if (narrowing && isNarrowedBySubFilters()) {
+            reportFilterNarrowedToObservers();
+        } else {
+            reportFilterUpdatedToObservers();
+        }
+    }
+
+    /**
+     * Returns true if a narrowing update on any sub filter narrows also this filter. It is false
+     * by default, as the composition semantics are not defined.
+     */
+    protected boolean isNarrowedBySubFilters() {
+        return false;
+    }
+
+    /**
+     * Returns the rows included by the given sub filter, reusing its last evaluation if the sub
+     * filter has not changed since -updating it, if the rows have changed-. The returned
+     * selection must not be modified.
+     *
+     * @return  null if the evaluation has been cancelled
+     */
+    protected RowSelection getSelection(final IFilter filter, RowFilter.Rows rows) {
+        Object content = rows.getContentVersion();
+        RowSelection candidates = null;
+        RowSelection previous = null;
+        Object previousContent = null;
+        CachedSelection cached;
+        int version;
+        synchronized (selections) {
+            cached = selections.get(filter);
+            if (cached == null) {
+                cached = new CachedSelection(filter);
+                selections.put(filter, cached);
+            } else if ((cached.content == content) && (cached.size == rows.getSize())) {
+                if (cached.selection != null) {
+                    return cached.selection;
+                }
+                candidates = cached.candidates;
+            } else {
+                previous = cached.selection;
+                previousContent = cached.content;
+            }
+            version = cached.version;
+        }
+
+        // on changes in the rows, only the inserted and updated rows are evaluated again
+        RowSelection updated = null;
+        if (previous != null) {
+            updated = new RowSelection(previous);
+            candidates = rows.updateSelection(previousContent, updated);
+            if ((candidates == null) || (updated.getSize() != rows.getSize())) {
+                candidates = null;
+                updated = null;
+            }
+        }
+
+        RowSelection ret = new RowSelection(rows.getSize());
+        long start = System.nanoTime();
+        if ((candidates == null) || (candidates.getCount() > 0)) {
+            if (filter instanceof RowFilter) {
+                ((RowFilter) filter).include(rows, candidates, ret);
+            } else {
+                rows.evaluate(new RowFilter() {
+                        @Override public boolean include(Entry entry) {
+                            return filter.include(entry);
+                        }
+                    }, candidates, ret);
+            }
+        }
+        if (rows.isCancelled()) {
+            return null;
+        }
+        int passed = ret.getCount();
+        if (updated != null) {
+            updated.andNot(candidates);
+            updated.or(ret);
+            ret = updated;
+        }
+        synchronized (selections) {
+            // the filter could have been updated during the evaluation
+            if (cached.version == version) {
+                cached.selection = ret;
+                cached.candidates = null;
+                cached.content = content;
+                cached.size = ret.getSize();
+                cached.nanos += System.nanoTime() - start;
+                cached.rows += (candidates == null) ? ret.getSize() : candidates.getCount();
+                cached.passed += passed;
+                order = null;
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * Returns the sub filters in the order they should be evaluated, when the evaluation stops
+     * as soon as any sub filter returns the given result: first the sub filters with the lowest
+     * ratio between their cost and the probability of returning that result.<br>
+     * Sub filters including every row are left out if the result is false, as they cannot stop
+     * the evaluation, and go first otherwise.
+     */
+    protected IFilter[] getOrderedFilters(boolean result) {
+        CachedSelection[] ordered = getOrder(result);
+        IFilter[] ret = new IFilter[ordered.length];
+        for (int i = 0; i < ordered.length; i++) {
+            ret[i] = ordered[i].filter;
+        }
+
+        return ret;
+    }
+
+    /**
+     * Evaluates the sub filters on the given row, in the order defined by
+     * {@link #getOrderedFilters(boolean)}, until any sub filter returns the given result. Some
+     * evaluations are sampled, evaluating then every sub filter to update their statistics; the
+     * new statistics are only used on the next rebuild of the order.
+     *
+     * @return  true if any sub filter returned the given result
+     */
+    protected boolean includeUntil(RowFilter.Entry entry, boolean result) {
+        return includeUntil(entry, result, null);
+    }
+
+    /**
+     * Evaluates the sub filters on the given row as {@link #includeUntil(RowFilter.Entry,
+     * boolean)}, replacing some of them -for example, with the part left uncompiled by a
+     * {@link net.coderazzi.filters.artifacts.FilterProgram}-.
+     *
+     * @param  replaced  the filter to evaluate instead of each given sub filter -null to skip
+     *                   it-, or null to evaluate all the sub filters
+     */
+    protected boolean includeUntil(RowFilter.Entry entry, boolean result,
+                                   Map<IFilter, RowFilter> replaced) {
+        CachedSelection[] ordered = getOrder(result);
+        if ((++evaluations & SAMPLE_MASK) != 0) {
+            for (CachedSelection sub : ordered) {
+                Boolean included = include(sub.filter, entry, replaced);
+                if ((included != null) && (included.booleanValue() == result)) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        // statistics are updated without synchronization: lost updates are irrelevant
+        boolean ret = false;
+        for (CachedSelection sub : ordered) {
+            long start = System.nanoTime();
+            Boolean evaluated = include(sub.filter, entry, replaced);
+            if (evaluated == null) {
+                continue;
+            }
+            boolean included = evaluated.booleanValue();
+            sub.nanos += System.nanoTime() - start;
+            sub.rows++;
+            if (included) {
+                sub.passed++;
+            }
+            ret |= (included == result);
+        }
+        if (!orderMeasured && (++orderSamples == SAMPLES_PER_ORDER)) {
+            order = null;
+        }
+
+        return ret;
+    }
+
+    /**
+     * Evaluates the given sub filter on the row -or the filter replacing it-, returning null if
+     * the sub filter is skipped
+     */
+    private static Boolean include(IFilter filter, RowFilter.Entry entry,
+                                   Map<IFilter, RowFilter> replaced) {
+        if ((replaced == null) || !replaced.containsKey(filter)) {
+            return Boolean.valueOf(filter.include(entry));
+        }
+        RowFilter replacement = replaced.get(filter);
+
+        return (replacement == null) ? null : Boolean.valueOf(replacement.include(entry));
+    }
+
+    /**
+     * Returns the sub filters in evaluation order, sorting them if needed
+     */
+    private CachedSelection[] getOrder(boolean result) {
+        CachedSelection[] ret = order;
+        if ((ret != null) && (orderResult == result)) {
+            return ret;
+        }
+        synchronized (selections) {
+            ret = new CachedSelection[filters.size()];
+            int[] ranks = new int[ret.length];
+            int size = 0;
+            boolean measured = true;
+            for (IFilter filter : filters) {
+                boolean includesAll = (filter instanceof RowFilter)
+                    && ((RowFilter) filter).includesAll();
+                if (includesAll && !result) {
+                    continue;
+                }
+                CachedSelection sub = selections.get(filter);
+                if (sub == null) {
+                    sub = new CachedSelection(filter);
+                    selections.put(filter, sub);
+                }
+                // insertion sort, keeping the order of the sub filters with the same rank
+                int rank = includesAll ? -1 : sub.getRank(result);
+                measured &= (rank != Integer.MAX_VALUE);
+                int position = size++;
+                while ((position > 0) && (ranks[position - 1] > rank)) {
+                    ret[position] = ret[position - 1];
+                    ranks[position] = ranks[position - 1];
+                    position--;
+                }
+                ret[position] = sub;
+                ranks[position] = rank;
+            }
+            if (size < ret.length) {
+                CachedSelection[] trimmed = new CachedSelection[size];
+                System.arraycopy(ret, 0, trimmed, 0, size);
+                ret = trimmed;
+            }
+            orderResult = result;
+            orderMeasured = measured;
+            orderSamples = 0;
+            order = ret;
+        }
+
+        return ret;
+    }
+
+
+    /**
+     * Last evaluation of a sub filter, valid for the given content version of the rows. After a
+     * narrowing update, the last evaluation is kept as candidates for the next one.<br>
+     * It keeps as well the statistics of the sub filter since its last update: the number of
+     * rows evaluated, included, and the time spent.
+     */
+    private static class CachedSelection {
+        final IFilter filter;
+        int version;
+        int size;
+        Object content;
+        RowSelection selection;
+        RowSelection candidates;
+        long rows;
+        long passed;
+        long nanos;
+
+        CachedSelection(IFilter filter) {
+            this.filter = filter;
+        }
+
+        void resetStatistics() {
+            rows = 0;
+            passed = 0;
+            nanos = 0;
+        }
+
+        /**
+         * Returns the magnitude -base 2 logarithm- of the expected cost of evaluating the sub
+         * filter until it returns the given result; sub filters without statistics go last
+         */
+        int getRank(boolean result) {
+            long evaluated = rows;
+            if (evaluated == 0) {
+                return Integer.MAX_VALUE;
+            }
+            long matched = result ? passed : (evaluated - passed);
+            if (matched <= 0) {
+                return Integer.MAX_VALUE - 1;
+            }
+
+            return 64 - Long.numberOfLeadingZeros(nanos / matched);
+        }
     }
 
 }
@@ -25,7 +25,9 @@
 
 package net.coderazzi.filters;
 
+import net.coderazzi.filters.artifacts.FilterProgram;
 import net.coderazzi.filters.artifacts.RowFilter;
+import net.coderazzi.filters.artifacts.RowSelection;
 
 
 /**
@@ -49,4 +51,41 @@ public class NotFilter extends AndFilter {
 	@Override public boolean include(RowFilter.Entry rowEntry) {
         return !super.include(rowEntry);
     }
+
+    /**
+     * @see  RowFilter#include(RowFilter.Rows, RowSelection, RowSelection)
+     */
+    @Override public void include(RowFilter.Rows rows, RowSelection candidates,
+                                  RowSelection result) {
+        super.include(rows, null, result);
+        result.invert();
+        if (candidates != null) {
+            result.and(candidates);
+        }
+    }
+
+    /**
+     * The negation never includes every row
+     *
+     * @see  RowFilter#includesAll()
+     */
+    @Override public boolean includesAll() {
+        return false;
+    }
+
+    /**
+     * The negation is not a conjunction: it is added as a whole
+     *
+     * @see  RowFilter#compile(FilterProgram)
+     */
+    @Override public void compile(FilterProgram program) {
+        program.addFilter(this);
+    }
+
+    /**
+     * Narrowing any sub filter widens the negation
+     */
+    @Override protected boolean isNarrowedBySubFilters() {
+        return false;
+    }
 }
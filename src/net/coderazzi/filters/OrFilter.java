@@ -26,6 +26,7 @@
 package net.coderazzi.filters;
 
 import net.coderazzi.filters.artifacts.RowFilter;
+import net.coderazzi.filters.artifacts.RowSelection;
 
 
 /**
@@ -44,16 +45,58 @@ public class OrFilter extends ComposedFilter {
     }
 
     /**
+     * Evaluates first the sub filters more likely to include the row at a lower cost
+     *
      * @see  IFilter#include(RowFilter.Entry)
      */
 	@Override public boolean include(RowFilter.Entry rowEntry) {
-        boolean ret = true;
-        for (IFilter filter : filters){
-            if (filter.include(rowEntry))
-                return true;
-            ret = false;
+        return filters.isEmpty() || includeUntil(rowEntry, true);
+    }
+
+    /**
+     * Joins the (cached) evaluations of the sub filters, starting with those including more
+     * rows, and skipping the remaining sub filters once every row is included
+     *
+     * @see  RowFilter#include(RowFilter.Rows, RowSelection, RowSelection)
+     */
+    @Override public void include(RowFilter.Rows rows, RowSelection candidates,
+                                  RowSelection result) {
+        if (includesAll()) {
+            result.setAll();
+        } else {
+            for (IFilter filter : getOrderedFilters(true)) {
+                RowSelection selection = getSelection(filter, rows);
+                if (selection == null)
+                    return;
+                result.or(selection);
+                if (result.getCount() == result.getSize())
+                    break;
+            }
+        }
+        if (candidates != null) {
+            result.and(candidates);
         }
+    }
 
-        return ret;
+    /**
+     * The union includes every row if it has no sub filters, or any of them does
+     *
+     * @see  RowFilter#includesAll()
+     */
+    @Override public boolean includesAll() {
+        if (filters.isEmpty())
+            return true;
+        for (IFilter filter : filters)
+            if ((filter instanceof RowFilter) && ((RowFilter) filter).includesAll())
+                return true;
+
+        return false;
+    }
+
+    /**
+     * Narrowing any sub filter narrows the union
+     */
+    @Override protected boolean isNarrowedBySubFilters() {
+        return true;
     }
 }
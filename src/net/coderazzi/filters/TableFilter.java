@@ -28,6 +28,7 @@ package net.coderazzi.filters;
 import javax.swing.JTable;
 import javax.swing.table.TableModel;
 
+import net.coderazzi.filters.artifacts.FilterProgram;
 import net.coderazzi.filters.artifacts.ITableModelFilter;
 import net.coderazzi.filters.artifacts.RowFilter;
 import net.coderazzi.filters.artifacts.TableModelFilter;
@@ -74,6 +75,18 @@ public class TableFilter extends AndFilter {
      */
     private boolean pendingNotifications;
 
+    /**
+     * pendingNarrowing is true while all the changes not yet sent to the table can only exclude
+     * rows, so that only the visible rows need to be filtered.
+     */
+    private boolean pendingNarrowing = true;
+
+    /** Whether the filter is evaluated on a background thread */
+    private boolean asynchronousFiltering;
+
+    /** The composed filter compiled, rebuilt on demand after any change; null if obsolete */
+    private volatile FilterProgram program;
+
     /** The associated table, if any. */
     JTable table;
 
@@ -86,6 +99,8 @@ public class TableFilter extends AndFilter {
         // are filter changes.
         addFilterObserver(new IFilterObserver() {
                 public void filterUpdated(IFilter obs) {
+                    program = null;
+                    pendingNarrowing &= isNarrowingUpdate();
                     notifyUpdatedFilter(false);
                 }
             });
@@ -99,6 +114,46 @@ public class TableFilter extends AndFilter {
         setTable(table);
     }
 
+    /**
+     * <p>Evaluates the filters of all the editors on a single row, as required when the model
+     * inserts or updates some rows.</p>
+     *
+     * <p>The composed filter is compiled into a {@link FilterProgram}, so that the comparisons
+     * entered in the editors are evaluated in a single loop, without traversing the filter of each
+     * editor. The filters that cannot be compiled are evaluated afterwards, ordered by their cost
+     * and selectivity. The program is only compiled again after any filter changes.</p>
+     *
+     * <p>The program is not used when the filter is evaluated on all the rows at once: the
+     * result of each editor is then kept as a bitset, so that a change in one editor only
+     * evaluates that editor again -only on the rows it included, if narrowed-, and each editor
+     * can select its rows with the column indexes. A single pass of the program would evaluate
+     * again the comparisons of every editor on every row.</p>
+     */
+    @Override public boolean include(RowFilter.Entry rowEntry) {
+        return getProgram().include(rowEntry);
+    }
+
+    /**
+     * Returns true if no editor has currently any filter, so that the {@link TableModelFilter}
+     * can display all the rows without evaluating any filter
+     */
+    @Override public boolean includesAll() {
+        return getProgram().includesAll();
+    }
+
+    /**
+     * Returns the compiled composed filter, compiling it if needed
+     */
+    private FilterProgram getProgram() {
+        FilterProgram ret = program;
+        if (ret == null) {
+            ret = FilterProgram.compile(this);
+            program = ret;
+        }
+
+        return ret;
+    }
+
     /**
      * Method to set the associated table. If the table had not defined its own
      * {@link javax.swing.RowSorter}, the default one is automatically created.
@@ -133,6 +188,43 @@ public class TableFilter extends AndFilter {
     }
 
 
+    /**
+     * <p>Sets whether the filter is evaluated on a background thread, so that the user interface
+     * does not freeze while filtering large tables.</p>
+     *
+     * <p>The table displays its previous content until the evaluation completes, and any
+     * evaluation in progress is cancelled as soon as the filter changes again. Note that the
+     * table model and the filters are then accessed from the background thread, and must support
+     * it. It is only possible if the table's model is a {@link TableModelFilter}; otherwise, the
+     * filter is always applied synchronously.</p>
+     */
+    public void setAsynchronousFiltering(boolean set) {
+        asynchronousFiltering = set;
+    }
+
+    /**
+     * Returns true if the filter is evaluated on a background thread
+     *
+     * @see  #setAsynchronousFiltering(boolean)
+     */
+    public boolean isAsynchronousFiltering() {
+        return asynchronousFiltering;
+    }
+
+    /**
+     * Returns the time, in milliseconds, that the last update of the filter took to be applied
+     * on the table -including the evaluation in background, if asynchronous-, or 0 if unknown
+     *
+     * @see  TableModelFilter#getLastFilterDuration()
+     */
+    public long getLastFilterDuration() {
+        TableModel model = (table == null) ? null : table.getModel();
+
+        return (model instanceof TableModelFilter)
+            ? ((TableModelFilter) model).getLastFilterDuration() : 0;
+    }
+
+
     /**
      * <p>Temporarily enable/disable notifications to the observers, including the registered
      * {@link javax.swing.JTable}.</p>
@@ -180,10 +272,25 @@ public class TableFilter extends AndFilter {
      * Internal method to send without further checks a notification to the observers.
      */
     private boolean sendFilterUpdateNotification() {
+    	boolean narrowing = pendingNarrowing;
+    	pendingNarrowing = true;
     	if (table!=null){
 	    	TableModel model = table.getModel();
 	    	if (model!=null){
-	    		getRowFilter(model).setRowFilter(this);
+	    		ITableModelFilter modelFilter = getRowFilter(model);
+	    		if (modelFilter instanceof TableModelFilter){
+	    			TableModelFilter tableModelFilter = (TableModelFilter) modelFilter;
+	    			RowFilter current = tableModelFilter.getRowFilter();
+	    			// the narrowing refers to the previous state of this filter
+	    			narrowing = narrowing && ((current == null) || (current == this));
+	    			if (asynchronousFiltering){
+	    				tableModelFilter.setRowFilterInBackground(this, narrowing);
+	    			} else {
+	    				tableModelFilter.setRowFilter(this, narrowing);
+	    			}
+	    		} else {
+	    			modelFilter.setRowFilter(this);
+	    		}
 	    	}
     	}
         return false;
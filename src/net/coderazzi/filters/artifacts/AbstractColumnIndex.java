@@ -0,0 +1,87 @@
+/**
+ * Author:  Luis M Pena  ( lu@coderazzi.net )
+ * License: MIT License
+ *
+ * Copyright (c) 2007 Luis M. Pena  -  lu@coderazzi.net
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.coderazzi.filters.artifacts;
+
+
+/**
+ * <p>Base class of the indexes kept by the {@link TableModelFilter} on the columns of the model,
+ * updated incrementally as the model notifies its changes.</p>
+ *
+ * @author  Luis M Pena - lu@coderazzi.net
+ */
+abstract class AbstractColumnIndex {
+
+    /** Modifications covering more rows than this fraction of the index rebuild it */
+    static final int REBUILD_RATIO = 8;
+
+    /** Minimum number of modified rows to consider rebuilding the index */
+    static final int REBUILD_MINIMUM = 64;
+
+    /**
+     * Updates the index after count rows are inserted at the given row
+     */
+    abstract void insertRows(int firstRow, int count);
+
+    /**
+     * Updates the index after count rows are deleted at the given row
+     */
+    abstract void deleteRows(int firstRow, int count);
+
+    /**
+     * Updates the index after the rows between firstRow and lastRow -both inclusive- are
+     * modified
+     */
+    abstract void updateRows(int firstRow, int lastRow);
+
+    /**
+     * Returns the approximated memory used by the index, in bytes
+     */
+    abstract long getMemoryUsage();
+
+    /**
+     * Returns true if a change on the given number of rows is better handled rebuilding the
+     * index, with the given size
+     */
+    static boolean isLargeChange(int count, int size) {
+        return (count > REBUILD_MINIMUM) && (count > (size / REBUILD_RATIO));
+    }
+
+
+    /**
+     * Exception raised when the value at some row cannot be indexed
+     */
+    static class UnsupportedValueException extends RuntimeException {
+        private static final long serialVersionUID = 4829164213051740112L;
+
+        /** The model row holding the value */
+        final int row;
+
+        UnsupportedValueException(int row, RuntimeException cause) {
+            super(cause);
+            this.row = row;
+        }
+    }
+}
@@ -0,0 +1,840 @@
+/**
+ * Author:  Luis M Pena  ( lu@coderazzi.net )
+ * License: MIT License
+ *
+ * Copyright (c) 2007 Luis M. Pena  -  lu@coderazzi.net
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.coderazzi.filters.artifacts;
+
+import java.text.Format;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.swing.event.TableModelEvent;
+import javax.swing.table.TableModel;
+
+
+/**
+ * <p>Columnar snapshot of the values in a {@link TableModel}, so that filters do not need to
+ * invoke repeatedly {@link TableModel#getValueAt(int, int)} on the same cells.</p>
+ *
+ * <p>Each column is stored in its own array, created on demand, and each cell is only read from
+ * the model the first time it is requested. Columns declaring the Integer, Long or Double classes
+ * are stored in primitive arrays, and can be read through the typed accessors without boxing;
+ * should the model return any value of a different type, the column is stored afterwards as
+ * objects.</p>
+ *
+ * <p>Columns declaring the Boolean or String classes, or any enumeration, are dictionary encoded:
+ * each distinct value is stored once, and each cell keeps just its one byte code, so that
+ * comparing a cell with a given value is a code comparison. Should a column contain more than
+ * 256 distinct values, it is stored afterwards as objects.</p>
+ *
+ * <p>Columns can also keep the values formatted with a given {@link Format}, so that filters
+ * comparing the string representation of the values do not need to format them on each pass,
+ * and their keys for a given {@link RowFilter.IKeyGenerator}.</p>
+ *
+ * <p>The cache is kept up to date with the {@link TableModelEvent}s of the model, invalidating only
+ * the affected cells; it relies therefore on the model notifying every change.</p>
+ *
+ * @author  Luis M Pena - lu@coderazzi.net
+ */
+class ColumnCache {
+
+    /** State of the cells whose value has not been read yet */
+    static final byte NOT_LOADED = 0;
+
+    /** State of the cells with a non null value */
+    static final byte LOADED = 1;
+
+    /** State of the cells with a null value */
+    static final byte NULL_VALUE = 2;
+
+    /** Approximated size, in bytes, of an array header */
+    static final int ARRAY_HEADER_SIZE = 16;
+
+    /** Approximated size, in bytes, of an object reference */
+    static final int REFERENCE_SIZE = 4;
+
+    /** The cached columns; a column is null until any of its values is requested */
+    private Column[] columns = new Column[0];
+
+    /** Number of rows in the model */
+    private int rows;
+
+    /** The cached model */
+    private TableModel model;
+
+    /**
+     * Discards any cached value, adapting the cache to the current structure of the model
+     */
+    void reset(TableModel model) {
+        this.model = model;
+        this.columns = new Column[model.getColumnCount()];
+        this.rows = model.getRowCount();
+    }
+
+    /**
+     * Returns the value at the given cell, reading it from the model if not yet cached
+     */
+    Object getValue(int row, int column) {
+        Column values = load(row, column);
+
+        return (values.states[row] == NULL_VALUE) ? null : values.getObject(row);
+    }
+
+    /**
+     * Returns true if the value at the given cell is null
+     */
+    boolean isNull(int row, int column) {
+        return load(row, column).states[row] == NULL_VALUE;
+    }
+
+    /**
+     * Returns the value at the given cell, that must be a non null Number, as an int
+     */
+    int getInt(int row, int column) {
+        return loadValue(row, column).getInt(row);
+    }
+
+    /**
+     * Returns the value at the given cell, that must be a non null Number, as a long
+     */
+    long getLong(int row, int column) {
+        return loadValue(row, column).getLong(row);
+    }
+
+    /**
+     * Returns the value at the given cell, that must be a non null Number, as a double
+     */
+    double getDouble(int row, int column) {
+        return loadValue(row, column).getDouble(row);
+    }
+
+    /**
+     * Returns true if the value at the given cell equals the given value, or both are null
+     */
+    boolean isEqual(int row, int column, Object value) {
+        Column values = load(row, column);
+        if (values.states[row] == NULL_VALUE) {
+            return value == null;
+        }
+
+        return (value != null) && values.isEqual(row, value);
+    }
+
+    /**
+     * Returns the value at the given cell, that must be a non null Boolean
+     */
+    boolean getBoolean(int row, int column) {
+        return ((Boolean) loadValue(row, column).getObject(row)).booleanValue();
+    }
+
+    /**
+     * Returns the value at the given cell formatted with the given format, or the empty string if
+     * the value is null. The formatted values are only kept for the last format used on each
+     * column.
+     */
+    String getFormattedValue(int row, int column, Format format) {
+        Column values = load(row, column);
+        if (values.states[row] == NULL_VALUE) {
+            return "";
+        }
+        FormattedValues formatted = values.formatted;
+        if ((formatted == null) || (formatted.format != format)) {
+            formatted = getFormattedValues(values, format);
+        }
+        String ret = formatted.values[row];
+        if (ret == null) {
+            Object value = values.getObject(row);
+            synchronized (format) {
+                ret = format.format(value);
+            }
+            formatted.values[row] = ret;
+        }
+
+        return ret;
+    }
+
+    /**
+     * Returns the storage for the values of the column formatted with the given format, discarding
+     * those formatted with any other format.<br>
+     * It is synchronized, as the cache can be accessed concurrently when the filter is evaluated
+     * in parallel.
+     */
+    private synchronized FormattedValues getFormattedValues(Column values, Format format) {
+        if ((values.formatted == null) || (values.formatted.format != format)) {
+            values.formatted = new FormattedValues(format, values.states.length);
+        }
+
+        return values.formatted;
+    }
+
+    /**
+     * Returns the key of the value at the given cell, that must be non null. The keys are only
+     * kept for the last generator used on each column.
+     *
+     * @throws  NullPointerException  if the value is null
+     */
+    long getKey(int row, int column, RowFilter.IKeyGenerator generator) {
+        Column values = loadValue(row, column);
+        Keys keys = values.keys;
+        if ((keys == null) || (keys.generator != generator)) {
+            keys = getKeys(values, generator);
+        }
+        if (keys.set[row]) {
+            return keys.values[row];
+        }
+        long ret = generator.getKey(values.getObject(row));
+        keys.values[row] = ret;
+        keys.set[row] = true;
+
+        return ret;
+    }
+
+    /**
+     * Creates the storage for the keys of the column computed with the given generator,
+     * discarding those computed with any other generator.<br>
+     * It is synchronized, as the cache can be accessed concurrently when the filter is evaluated
+     * in parallel.
+     */
+    private synchronized Keys getKeys(Column values, RowFilter.IKeyGenerator generator) {
+        if ((values.keys == null) || (values.keys.generator != generator)) {
+            values.keys = new Keys(generator, values.states.length);
+        }
+
+        return values.keys;
+    }
+
+    /**
+     * Returns the column storing the given cell, ensuring that the cell is loaded, and is not null
+     *
+     * @throws  NullPointerException  if the value is null
+     */
+    private Column loadValue(int row, int column) {
+        Column ret = load(row, column);
+        if (ret.states[row] == NULL_VALUE) {
+            throw new NullPointerException();
+        }
+
+        return ret;
+    }
+
+    /**
+     * Returns the column storing the given cell, ensuring that the cell is loaded
+     */
+    private Column load(int row, int column) {
+        Column ret = columns[column];
+        if (ret == null) {
+            ret = getColumn(column, null);
+        }
+        if (ret.states[row] == NOT_LOADED) {
+            if (ret.formatted != null) {
+                ret.formatted.values[row] = null;
+            }
+            if (ret.keys != null) {
+                ret.keys.set[row] = false;
+            }
+            Object value = model.getValueAt(row, column);
+            if (value == null) {
+                ret.states[row] = NULL_VALUE;
+            } else {
+                if (!ret.set(row, value)) {
+                    ret = getColumn(column, ret);
+                    ret.set(row, value);
+                }
+                ret.states[row] = LOADED;
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * Creates the storage for the given column, if not yet created. If a column is given, it is
+     * replaced by an object column, as it cannot store some value.<br>
+     * It is synchronized, as the cache can be accessed concurrently when the filter is evaluated
+     * in parallel.
+     */
+    private synchronized Column getColumn(int column, Column unsuitable) {
+        Column ret = columns[column];
+        if ((ret == null) || (ret == unsuitable)) {
+            if (unsuitable != null) {
+                ret = new ObjectColumn(rows);
+            } else {
+                Class<?> c = model.getColumnClass(column);
+                if (Integer.class.equals(c)) {
+                    ret = new IntColumn(rows);
+                } else if (Long.class.equals(c)) {
+                    ret = new LongColumn(rows);
+                } else if (Double.class.equals(c)) {
+                    ret = new DoubleColumn(rows);
+                } else if (Boolean.class.equals(c) || String.class.equals(c)
+                        || ((c != null) && c.isEnum())) {
+                    ret = new DictionaryColumn(rows);
+                } else {
+                    ret = new ObjectColumn(rows);
+                }
+            }
+            columns[column] = ret;
+        }
+
+        return ret;
+    }
+
+    /**
+     * Updates the cache to reflect a change in the model
+     */
+    void tableChanged(TableModelEvent e) {
+        int firstRow = e.getFirstRow();
+        int lastRow = e.getLastRow();
+        if ((firstRow == TableModelEvent.HEADER_ROW) || (lastRow == Integer.MAX_VALUE)) {
+            reset(model);
+        } else {
+            switch (e.getType()) {
+
+                case TableModelEvent.INSERT:
+                    insertRows(firstRow, lastRow - firstRow + 1);
+
+                    break;
+
+                case TableModelEvent.DELETE:
+                    deleteRows(firstRow, lastRow - firstRow + 1);
+
+                    break;
+
+                default:
+                    invalidate(firstRow, lastRow, e.getColumn());
+
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Returns the approximated memory used by the cache, in bytes. For object columns and
+     * formatted values, only the arrays are accounted for.
+     */
+    long getMemoryUsage() {
+        long ret = ARRAY_HEADER_SIZE + ((long) REFERENCE_SIZE * columns.length);
+        for (Column values : columns) {
+            if (values != null) {
+                ret += (2 * ARRAY_HEADER_SIZE) +
+                    ((long) (values.getCellSize() + 1) * values.states.length);
+                if (values.formatted != null) {
+                    ret += ARRAY_HEADER_SIZE + ((long) REFERENCE_SIZE * values.states.length);
+                }
+                if (values.keys != null) {
+                    ret += (2 * ARRAY_HEADER_SIZE) + (9L * values.states.length);
+                }
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * Marks the given cells as not loaded, in all columns if column is
+     * {@link TableModelEvent#ALL_COLUMNS}
+     */
+    private void invalidate(int firstRow, int lastRow, int column) {
+        int to = Math.min(lastRow + 1, rows);
+        if (column == TableModelEvent.ALL_COLUMNS) {
+            for (Column values : columns) {
+                if (values != null) {
+                    Arrays.fill(values.states, firstRow, to, NOT_LOADED);
+                }
+            }
+        } else if ((column < columns.length) && (columns[column] != null)) {
+            Arrays.fill(columns[column].states, firstRow, to, NOT_LOADED);
+        }
+    }
+
+    /**
+     * Makes room for count new rows, not loaded, starting at the given row
+     */
+    private void insertRows(int firstRow, int count) {
+        int size = rows + count;
+        for (Column values : columns) {
+            if (values != null) {
+                if (values.states.length < size) {
+                    values.setCapacity(Math.max(size, (values.states.length / 4) * 5), rows);
+                }
+                values.move(firstRow, firstRow + count, rows - firstRow);
+                Arrays.fill(values.states, firstRow, firstRow + count, NOT_LOADED);
+            }
+        }
+        rows = size;
+    }
+
+    /**
+     * Removes count rows, starting at the given row
+     */
+    private void deleteRows(int firstRow, int count) {
+        int size = rows - count;
+        for (Column values : columns) {
+            if (values != null) {
+                values.move(firstRow + count, firstRow, size - firstRow);
+                Arrays.fill(values.states, size, rows, NOT_LOADED);
+            }
+        }
+        rows = size;
+    }
+
+
+    /**
+     * Storage of the values of a single column, with the state of each cell
+     */
+    abstract static class Column {
+
+        /** The state of each cell: NOT_LOADED, LOADED or NULL_VALUE */
+        byte[] states;
+
+        /** The formatted values, if any */
+        FormattedValues formatted;
+
+        /** The keys of the values, if any */
+        Keys keys;
+
+        Column(int capacity) {
+            states = new byte[capacity];
+        }
+
+        /**
+         * Stores the given non null value, returning false if not supported
+         */
+        abstract boolean set(int row, Object value);
+
+        /** Returns the value at a loaded, non null, cell */
+        abstract Object getObject(int row);
+
+        /** Returns the size, in bytes, of each stored value */
+        abstract int getCellSize();
+
+        /** Reallocates the storage, keeping the given number of values */
+        abstract void setValuesCapacity(int capacity, int keep);
+
+        /** Moves length values, as System.arraycopy */
+        abstract void moveValues(int from, int to, int length);
+
+        int getInt(int row) {
+            return ((Number) getObject(row)).intValue();
+        }
+
+        long getLong(int row) {
+            return ((Number) getObject(row)).longValue();
+        }
+
+        double getDouble(int row) {
+            return ((Number) getObject(row)).doubleValue();
+        }
+
+        /** Returns true if the value at a loaded, non null, cell equals the given non null value */
+        boolean isEqual(int row, Object value) {
+            return getObject(row).equals(value);
+        }
+
+        /**
+         * Reallocates the column, keeping the given number of cells
+         */
+        void setCapacity(int capacity, int keep) {
+            byte[] grown = new byte[capacity];
+            System.arraycopy(states, 0, grown, 0, keep);
+            states = grown;
+            if (formatted != null) {
+                formatted.setCapacity(capacity, keep);
+            }
+            if (keys != null) {
+                keys.setCapacity(capacity, keep);
+            }
+            setValuesCapacity(capacity, keep);
+        }
+
+        /**
+         * Moves length cells, as System.arraycopy
+         */
+        void move(int from, int to, int length) {
+            System.arraycopy(states, from, states, to, length);
+            if (formatted != null) {
+                System.arraycopy(formatted.values, from, formatted.values, to, length);
+            }
+            if (keys != null) {
+                System.arraycopy(keys.values, from, keys.values, to, length);
+                System.arraycopy(keys.set, from, keys.set, to, length);
+            }
+            moveValues(from, to, length);
+        }
+    }
+
+
+    /**
+     * Values of a column formatted with a given format; they are null if not yet formatted, or
+     * if the cell is not loaded
+     */
+    static class FormattedValues {
+        final Format format;
+        String[] values;
+
+        FormattedValues(Format format, int capacity) {
+            this.format = format;
+            this.values = new String[capacity];
+        }
+
+        void setCapacity(int capacity, int keep) {
+            String[] grown = new String[capacity];
+            System.arraycopy(values, 0, grown, 0, keep);
+            values = grown;
+        }
+    }
+
+
+    /**
+     * Keys of the values of a column computed with a given generator; a key is only valid if
+     * its flag is set
+     */
+    static class Keys {
+        final RowFilter.IKeyGenerator generator;
+        long[] values;
+        boolean[] set;
+
+        Keys(RowFilter.IKeyGenerator generator, int capacity) {
+            this.generator = generator;
+            this.values = new long[capacity];
+            this.set = new boolean[capacity];
+        }
+
+        void setCapacity(int capacity, int keep) {
+            long[] grown = new long[capacity];
+            boolean[] grownSet = new boolean[capacity];
+            System.arraycopy(values, 0, grown, 0, keep);
+            System.arraycopy(set, 0, grownSet, 0, keep);
+            values = grown;
+            set = grownSet;
+        }
+    }
+
+
+    /**
+     * Storage of any kind of values
+     */
+    static class ObjectColumn extends Column {
+        Object[] values;
+
+        ObjectColumn(int capacity) {
+            super(capacity);
+            values = new Object[capacity];
+        }
+
+        @Override boolean set(int row, Object value) {
+            values[row] = value;
+
+            return true;
+        }
+
+        @Override Object getObject(int row) {
+            return values[row];
+        }
+
+        @Override int getCellSize() {
+            return REFERENCE_SIZE;
+        }
+
+        @Override void setValuesCapacity(int capacity, int keep) {
+            Object[] grown = new Object[capacity];
+            System.arraycopy(values, 0, grown, 0, keep);
+            values = grown;
+        }
+
+        @Override void moveValues(int from, int to, int length) {
+            System.arraycopy(values, from, values, to, length);
+        }
+    }
+
+
+    /**
+     * Storage of Integer values
+     */
+    static class IntColumn extends Column {
+        int[] values;
+
+        IntColumn(int capacity) {
+            super(capacity);
+            values = new int[capacity];
+        }
+
+        @Override boolean set(int row, Object value) {
+            if (value instanceof Integer) {
+                values[row] = ((Integer) value).intValue();
+
+                return true;
+            }
+
+            return false;
+        }
+
+        @Override Object getObject(int row) {
+            return Integer.valueOf(values[row]);
+        }
+
+        @Override int getInt(int row) {
+            return values[row];
+        }
+
+        @Override long getLong(int row) {
+            return values[row];
+        }
+
+        @Override double getDouble(int row) {
+            return values[row];
+        }
+
+        @Override int getCellSize() {
+            return 4;
+        }
+
+        @Override void setValuesCapacity(int capacity, int keep) {
+            int[] grown = new int[capacity];
+            System.arraycopy(values, 0, grown, 0, keep);
+            values = grown;
+        }
+
+        @Override void moveValues(int from, int to, int length) {
+            System.arraycopy(values, from, values, to, length);
+        }
+    }
+
+
+    /**
+     * Storage of Long values
+     */
+    static class LongColumn extends Column {
+        long[] values;
+
+        LongColumn(int capacity) {
+            super(capacity);
+            values = new long[capacity];
+        }
+
+        @Override boolean set(int row, Object value) {
+            if (value instanceof Long) {
+                values[row] = ((Long) value).longValue();
+
+                return true;
+            }
+
+            return false;
+        }
+
+        @Override Object getObject(int row) {
+            return Long.valueOf(values[row]);
+        }
+
+        @Override int getInt(int row) {
+            return (int) values[row];
+        }
+
+        @Override long getLong(int row) {
+            return values[row];
+        }
+
+        @Override double getDouble(int row) {
+            return values[row];
+        }
+
+        @Override int getCellSize() {
+            return 8;
+        }
+
+        @Override void setValuesCapacity(int capacity, int keep) {
+            long[] grown = new long[capacity];
+            System.arraycopy(values, 0, grown, 0, keep);
+            values = grown;
+        }
+
+        @Override void moveValues(int from, int to, int length) {
+            System.arraycopy(values, from, values, to, length);
+        }
+    }
+
+
+    /**
+     * Storage of Double values
+     */
+    static class DoubleColumn extends Column {
+        double[] values;
+
+        DoubleColumn(int capacity) {
+            super(capacity);
+            values = new double[capacity];
+        }
+
+        @Override boolean set(int row, Object value) {
+            if (value instanceof Double) {
+                values[row] = ((Double) value).doubleValue();
+
+                return true;
+            }
+
+            return false;
+        }
+
+        @Override Object getObject(int row) {
+            return Double.valueOf(values[row]);
+        }
+
+        @Override int getInt(int row) {
+            return (int) values[row];
+        }
+
+        @Override long getLong(int row) {
+            return (long) values[row];
+        }
+
+        @Override double getDouble(int row) {
+            return values[row];
+        }
+
+        @Override int getCellSize() {
+            return 8;
+        }
+
+        @Override void setValuesCapacity(int capacity, int keep) {
+            double[] grown = new double[capacity];
+            System.arraycopy(values, 0, grown, 0, keep);
+            values = grown;
+        }
+
+        @Override void moveValues(int from, int to, int length) {
+            System.arraycopy(values, from, values, to, length);
+        }
+    }
+
+
+    /**
+     * Storage of values as codes in a dictionary of up to 256 distinct values. Codes are never
+     * reassigned, so the code of a value can be kept while the column exists.
+     */
+    static class DictionaryColumn extends Column {
+
+        /** Maximum number of distinct values */
+        static final int MAX_CODES = 256;
+
+        byte[] values;
+
+        /** The distinct values, by code */
+        Object[] dictionary = new Object[8];
+
+        /** The code of each distinct value; accessed only while synchronized */
+        private Map<Object, Integer> codes = new HashMap<Object, Integer>();
+
+        /** Number of distinct values */
+        private volatile int size;
+
+        /** Last value looked up by isEqual, with its code */
+        private Lookup lastLookup = new Lookup(null, -1, -1);
+
+        DictionaryColumn(int capacity) {
+            super(capacity);
+            values = new byte[capacity];
+        }
+
+        /**
+         * Stores the given non null value, adding it to the dictionary if needed.<br>
+         * The dictionary is synchronized, as the cache can be loaded concurrently when the filter
+         * is evaluated in parallel.
+         */
+        @Override synchronized boolean set(int row, Object value) {
+            Integer code = codes.get(value);
+            if (code == null) {
+                if (size == MAX_CODES) {
+                    return false;
+                }
+                if (size == dictionary.length) {
+                    Object[] grown = new Object[size * 2];
+                    System.arraycopy(dictionary, 0, grown, 0, size);
+                    dictionary = grown;
+                }
+                code = Integer.valueOf(size);
+                dictionary[size] = value;
+                codes.put(value, code);
+                size++;
+            }
+            values[row] = (byte) code.intValue();
+
+            return true;
+        }
+
+        @Override Object getObject(int row) {
+            return dictionary[values[row] & 0xff];
+        }
+
+        /**
+         * Compares the codes; the code of the given value is only looked up when the value
+         * changes, or when a value missing in the dictionary could have been added since.
+         */
+        @Override boolean isEqual(int row, Object value) {
+            Lookup lookup = lastLookup;
+            if ((lookup.value != value) || ((lookup.code < 0) && (lookup.size != size))) {
+                lookup = lookup(value);
+                lastLookup = lookup;
+            }
+
+            return (values[row] & 0xff) == lookup.code;
+        }
+
+        private synchronized Lookup lookup(Object value) {
+            Integer code = codes.get(value);
+
+            return new Lookup(value, (code == null) ? -1 : code.intValue(), size);
+        }
+
+        @Override int getCellSize() {
+            return 1;
+        }
+
+        @Override void setValuesCapacity(int capacity, int keep) {
+            byte[] grown = new byte[capacity];
+            System.arraycopy(values, 0, grown, 0, keep);
+            values = grown;
+        }
+
+        @Override void moveValues(int from, int to, int length) {
+            System.arraycopy(values, from, values, to, length);
+        }
+    }
+
+
+    /**
+     * Result of looking up a value in a dictionary, when it had the given size
+     */
+    static final class Lookup {
+        final Object value;
+        final int code;
+        final int size;
+
+        Lookup(Object value, int code, int size) {
+            this.value = value;
+            this.code = code;
+            this.size = size;
+        }
+    }
+}
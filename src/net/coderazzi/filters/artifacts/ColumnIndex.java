@@ -0,0 +1,383 @@
+/**
+ * Author:  Luis M Pena  ( lu@coderazzi.net )
+ * License: MIT License
+ *
+ * Copyright (c) 2007 Luis M. Pena  -  lu@coderazzi.net
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.coderazzi.filters.artifacts;
+
+import java.util.Arrays;
+
+import javax.swing.table.TableModel;
+
+
+/**
+ * <p>Index of the values of a column in a {@link TableModel}, sorted by the keys that a
+ * {@link RowFilter.IKeyGenerator} produces for them. Comparison filters can use it to select the
+ * rows with keys below, equal or above a given one by binary search, instead of evaluating each
+ * row.</p>
+ *
+ * <p>Null values are not indexed. Indexes are created by the {@link TableModelFilter} when
+ * requested by a filter, and updated incrementally with the changes in the model. The changes
+ * are only recorded as they are notified, and applied together when the index is used again,
+ * so that each change costs a shift of a few bitsets, instead of a pass over the index.</p>
+ *
+ * @author  Luis M Pena - lu@coderazzi.net
+ */
+public class ColumnIndex extends AbstractColumnIndex {
+
+    /** The sorted keys */
+    private long[] keys;
+
+    /** The model row associated to each key */
+    private int[] rows;
+
+    /** Number of indexed values */
+    private int size;
+
+    /**
+     * Rows indexed when the changes were last applied, in that numbering, not deleted since;
+     * null if there are no pending changes
+     */
+    private RowSelection keptRows;
+
+    /** Rows of the model, in the current numbering, that existed when last applied */
+    private RowSelection oldRows;
+
+    /** Rows of the model, in the current numbering, inserted or updated since last applied */
+    private RowSelection changedRows;
+
+    private RowFilter.IKeyGenerator generator;
+    private TableModel model;
+    private int column;
+
+    ColumnIndex(TableModel model, int column, RowFilter.IKeyGenerator generator) {
+        this.model = model;
+        this.column = column;
+        this.generator = generator;
+        build();
+    }
+
+    /**
+     * Returns the generator used to produce the keys
+     */
+    public RowFilter.IKeyGenerator getKeyGenerator() {
+        return generator;
+    }
+
+    /**
+     * Returns the number of indexed -that is, non null- values
+     */
+    public int getSize() {
+        applyChanges();
+
+        return size;
+    }
+
+    /**
+     * Returns the first position whose key is not below the given one
+     */
+    public int lowerBound(long key) {
+        applyChanges();
+
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (keys[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * Returns the first position whose key is above the given one
+     */
+    public int upperBound(long key) {
+        applyChanges();
+
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (keys[mid] <= key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * Selects in the result the rows associated to the positions between from (inclusive) and
+     * to (exclusive)
+     */
+    public void select(int from, int to, RowSelection result) {
+        applyChanges();
+        while (from < to) {
+            result.set(rows[from++]);
+        }
+    }
+
+    @Override long getMemoryUsage() {
+        long ret = (2 * ColumnCache.ARRAY_HEADER_SIZE) + (12L * keys.length);
+        if (keptRows != null) {
+            ret += keptRows.getMemoryUsage() + oldRows.getMemoryUsage()
+                + changedRows.getMemoryUsage();
+        }
+
+        return ret;
+    }
+
+    /**
+     * Indexes the whole column
+     */
+    private void build() {
+        int count = model.getRowCount();
+        keys = new long[count];
+        rows = new int[count];
+        size = 0;
+        keptRows = null;
+        oldRows = null;
+        changedRows = null;
+        for (int row = 0; row < count; row++) {
+            Object value = model.getValueAt(row, column);
+            if (value != null) {
+                keys[size] = getKey(row, value);
+                rows[size++] = row;
+            }
+        }
+        if (!sortPacked()) {
+            sort(0, size, new long[size], new int[size]);
+        }
+    }
+
+    /**
+     * Returns the key of the value at the given row
+     *
+     * @throws  UnsupportedValueException  if the generator does not support the value
+     */
+    private long getKey(int row, Object value) {
+        try {
+            return generator.getKey(value);
+        } catch (RuntimeException ex) {
+            throw new UnsupportedValueException(row, ex);
+        }
+    }
+
+    /**
+     * Sorts the keys -and their rows- packing each pair in a single long, only possible if the
+     * keys span less than 32 bits. Returns false if not possible.
+     */
+    private boolean sortPacked() {
+        if (size == 0) {
+            return true;
+        }
+        long min = keys[0];
+        long max = min;
+        for (int i = 1; i < size; i++) {
+            long key = keys[i];
+            if (key < min) {
+                min = key;
+            } else if (key > max) {
+                max = key;
+            }
+        }
+        long span = max - min;
+        if ((span < 0) || (span >= (1L << 32))) {
+            return false;
+        }
+        long[] packed = new long[size];
+        for (int i = 0; i < size; i++) {
+            packed[i] = ((keys[i] - min) << 31) | rows[i];
+        }
+        Arrays.sort(packed);
+        for (int i = 0; i < size; i++) {
+            long pair = packed[i];
+            keys[i] = (pair >>> 31) + min;
+            rows[i] = (int) (pair & Integer.MAX_VALUE);
+        }
+
+        return true;
+    }
+
+    /**
+     * Stable merge sort of the keys -and their rows- between from and to
+     */
+    private void sort(int from, int to, long[] keyBuffer, int[] rowBuffer) {
+        if ((to - from) < 16) {
+            for (int i = from + 1; i < to; i++) {
+                long key = keys[i];
+                int row = rows[i];
+                int j = i;
+                while ((j > from) && (keys[j - 1] > key)) {
+                    keys[j] = keys[j - 1];
+                    rows[j] = rows[j - 1];
+                    j--;
+                }
+                keys[j] = key;
+                rows[j] = row;
+            }
+        } else {
+            int mid = (from + to) >>> 1;
+            sort(from, mid, keyBuffer, rowBuffer);
+            sort(mid, to, keyBuffer, rowBuffer);
+            if (keys[mid - 1] > keys[mid]) {
+                merge(from, mid, to, keyBuffer, rowBuffer);
+            }
+        }
+    }
+
+    /**
+     * Merges the sorted keys -and their rows- between from and mid with those between mid and
+     * to, keeping first the former on equal keys
+     */
+    private void merge(int from, int mid, int to, long[] keyBuffer, int[] rowBuffer) {
+        int length = mid - from;
+        System.arraycopy(keys, from, keyBuffer, from, length);
+        System.arraycopy(rows, from, rowBuffer, from, length);
+        int i = from;
+        int j = mid;
+        int k = from;
+        while ((i < mid) && (j < to)) {
+            if (keys[j] < keyBuffer[i]) {
+                keys[k] = keys[j];
+                rows[k++] = rows[j++];
+            } else {
+                keys[k] = keyBuffer[i];
+                rows[k++] = rowBuffer[i++];
+            }
+        }
+        System.arraycopy(keyBuffer, i, keys, k, mid - i);
+        System.arraycopy(rowBuffer, i, rows, k, mid - i);
+    }
+
+    @Override void insertRows(int firstRow, int count) {
+        startChanges();
+        oldRows.insert(firstRow, count);
+        changedRows.insert(firstRow, count);
+        changedRows.setRange(firstRow, firstRow + count);
+    }
+
+    @Override void deleteRows(int firstRow, int count) {
+        startChanges();
+        // the deleted rows that existed when last applied are consecutive among them
+        int first = oldRows.rank(firstRow);
+        int deleted = oldRows.rank(firstRow + count) - first;
+        int[] kept = new int[deleted];
+        for (int i = 0; i < deleted; i++) {
+            kept[i] = keptRows.select(first + i);
+        }
+        for (int row : kept) {
+            keptRows.clear(row);
+        }
+        oldRows.remove(firstRow, count);
+        changedRows.remove(firstRow, count);
+    }
+
+    @Override void updateRows(int firstRow, int lastRow) {
+        startChanges();
+        changedRows.setRange(firstRow, Math.min(lastRow + 1, changedRows.getSize()));
+    }
+
+    /**
+     * Starts recording the changes in the model, if not yet done
+     */
+    private void startChanges() {
+        if (keptRows == null) {
+            int count = model.getRowCount();
+            keptRows = new RowSelection(count);
+            keptRows.setAll();
+            oldRows = new RowSelection(keptRows);
+            changedRows = new RowSelection(count);
+        }
+    }
+
+    /**
+     * Applies the changes recorded since last applied: the indexed rows still existing and not
+     * updated are renumbered, keeping their order, and the inserted or updated rows are read
+     * again and merged. The index is rebuilt instead if the changes are large, or do not match
+     * the model.
+     *
+     * @throws  UnsupportedValueException  if the generator does not support some new value
+     */
+    void applyChanges() {
+        if (keptRows == null) {
+            return;
+        }
+        int count = model.getRowCount();
+        if ((oldRows.getSize() != count) || isLargeChange(changedRows.getCount(), size)) {
+            build();
+
+            return;
+        }
+
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            int row = rows[i];
+            if (keptRows.get(row)) {
+                row = oldRows.select(keptRows.rank(row));
+                if (!changedRows.get(row)) {
+                    keys[kept] = keys[i];
+                    rows[kept++] = row;
+                }
+            }
+        }
+        size = kept;
+
+        int capacity = size + changedRows.getCount();
+        if (capacity > keys.length) {
+            capacity = Math.max(capacity, (keys.length / 4) * 5);
+            long[] grownKeys = new long[capacity];
+            int[] grownRows = new int[capacity];
+            System.arraycopy(keys, 0, grownKeys, 0, size);
+            System.arraycopy(rows, 0, grownRows, 0, size);
+            keys = grownKeys;
+            rows = grownRows;
+        }
+        for (int row = changedRows.nextSetBit(0); row >= 0;
+                row = changedRows.nextSetBit(row + 1)) {
+            Object value = model.getValueAt(row, column);
+            if (value != null) {
+                keys[size] = getKey(row, value);
+                rows[size++] = row;
+            }
+        }
+        keptRows = null;
+        oldRows = null;
+        changedRows = null;
+        if (size > kept) {
+            long[] keyBuffer = new long[size];
+            int[] rowBuffer = new int[size];
+            sort(kept, size, keyBuffer, rowBuffer);
+            if ((kept > 0) && (keys[kept - 1] > keys[kept])) {
+                merge(0, kept, size, keyBuffer, rowBuffer);
+            }
+        }
+    }
+}
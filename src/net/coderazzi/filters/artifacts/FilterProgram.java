@@ -0,0 +1,305 @@
+/**
+ * Author:  Luis M Pena  ( lu@coderazzi.net )
+ * License: MIT License
+ *
+ * Copyright (c) 2007 Luis M. Pena  -  lu@coderazzi.net
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.coderazzi.filters.artifacts;
+
+/**
+ * <p>Filter compiled into a flat program: a conjunction of instructions, each one comparing a
+ * column with a given operand through the typed accessors of the {@link RowFilter.Entry}, plus
+ * any filters that cannot be compiled, evaluated afterwards.</p>
+ *
+ * <p>Evaluating a filter composed of other filters -like the {@link net.coderazzi.filters.TableFilter}
+ * with the filters of each editor- requires several levels of virtual calls per row; the program
+ * evaluates instead the compiled comparisons in a single loop. Filters add their instructions with
+ * {@link RowFilter#compile(FilterProgram)}; the program must be compiled again whenever any of
+ * them changes.</p>
+ *
+ * @author  Luis M Pena - lu@coderazzi.net
+ */
+public final class FilterProgram extends RowFilter {
+
+    /** Comparison result matching values lower than the operand */
+    public static final int LOWER = 1;
+
+    /** Comparison result matching values equal to the operand */
+    public static final int EQUAL = 2;
+
+    /** Comparison result matching values greater than the operand */
+    public static final int GREATER = 4;
+
+    /** Comparison of int values, read with {@link RowFilter.Entry#getInt(int)} */
+    private static final int INT_COMPARISON = 0;
+
+    /** Comparison of long values, read with {@link RowFilter.Entry#getLong(int)} */
+    private static final int LONG_COMPARISON = 1;
+
+    /** Comparison of double values, read with {@link RowFilter.Entry#getDouble(int)} */
+    private static final int DOUBLE_COMPARISON = 2;
+
+    /** Comparison of keys, read with {@link RowFilter.Entry#getKey(int, IKeyGenerator)} */
+    private static final int KEY_COMPARISON = 3;
+
+    /** Equality, checked with {@link RowFilter.Entry#isEqual(int, Object)} */
+    private static final int EQUALITY = 4;
+
+    /** Number of instructions */
+    private int size;
+
+    /** The kind of each instruction */
+    private int[] opcodes = new int[4];
+
+    /** The column compared by each instruction */
+    private int[] columns = new int[4];
+
+    /** The operand of each comparison; double values are stored as their bits */
+    private long[] operands = new long[4];
+
+    /** The matching comparison results of each instruction -LOWER, EQUAL, GREATER- */
+    private int[] matches = new int[4];
+
+    /** The key generator or the equality operand of each instruction, if any */
+    private Object[] arguments = new Object[4];
+
+    /** The filters that could not be compiled */
+    private RowFilter[] filters = new RowFilter[0];
+
+    /**
+     * Compiles the given filter; a null filter includes all the rows
+     */
+    public static FilterProgram compile(RowFilter filter) {
+        FilterProgram ret = new FilterProgram();
+        if (filter != null) {
+            filter.compile(ret);
+        }
+
+        return ret;
+    }
+
+    private FilterProgram() {
+    }
+
+    /**
+     * Adds a comparison of the non null int values in the given column with the given operand.
+     * Null values are never included.
+     *
+     * @param  matches  the comparison results included, as a combination of LOWER, EQUAL and
+     *                  GREATER
+     */
+    public void addIntComparison(int column, int operand, int matches) {
+        add(INT_COMPARISON, column, operand, matches, null);
+    }
+
+    /**
+     * Adds a comparison of the non null long values in the given column with the given operand.
+     * Null values are never included.
+     *
+     * @see  #addIntComparison(int, int, int)
+     */
+    public void addLongComparison(int column, long operand, int matches) {
+        add(LONG_COMPARISON, column, operand, matches, null);
+    }
+
+    /**
+     * Adds a comparison of the non null double values in the given column with the given
+     * operand, as defined by {@link Double#compare(double, double)}. Null values are never
+     * included.
+     *
+     * @see  #addIntComparison(int, int, int)
+     */
+    public void addDoubleComparison(int column, double operand, int matches) {
+        add(DOUBLE_COMPARISON, column, Double.doubleToRawLongBits(operand), matches, null);
+    }
+
+    /**
+     * Adds a comparison of the keys of the non null values in the given column with the given
+     * key. Null values are never included.
+     *
+     * @see  #addIntComparison(int, int, int)
+     */
+    public void addKeyComparison(int column, IKeyGenerator generator, long key, int matches) {
+        add(KEY_COMPARISON, column, key, matches, generator);
+    }
+
+    /**
+     * Adds an equality check of the non null values in the given column with the given operand,
+     * including the values equal to the operand -or, if equals is false, the values not equal to
+     * it-. Null values are never included.
+     */
+    public void addEquality(int column, Object operand, boolean equals) {
+        add(EQUALITY, column, 0, equals ? EQUAL : (LOWER | GREATER), operand);
+    }
+
+    /**
+     * Adds a filter that cannot be compiled, evaluated after all the instructions
+     */
+    public void addFilter(RowFilter filter) {
+        RowFilter[] grown = new RowFilter[filters.length + 1];
+        System.arraycopy(filters, 0, grown, 0, filters.length);
+        grown[filters.length] = filter;
+        filters = grown;
+    }
+
+    /**
+     * Returns true if the program contains any filter that could not be compiled
+     */
+    public boolean hasFilters() {
+        return filters.length > 0;
+    }
+
+    /**
+     * Returns the number of instructions and filters in the program; the program includes all
+     * the rows if it is zero
+     */
+    public int getSize() {
+        return size + filters.length;
+    }
+
+    /**
+     * A program without instructions or filters includes every row
+     *
+     * @see  RowFilter#includesAll()
+     */
+    @Override public boolean includesAll() {
+        return getSize() == 0;
+    }
+
+    /**
+     * @see  RowFilter#include(RowFilter.Entry)
+     */
+    @Override public boolean include(Entry entry) {
+        for (int i = 0; i < size; i++) {
+            int column = columns[i];
+            if (entry.isNull(column)) {
+                return false;
+            }
+            int comparison;
+            switch (opcodes[i]) {
+
+                case INT_COMPARISON:
+                    comparison = compare(entry.getInt(column), operands[i]);
+
+                    break;
+
+                case LONG_COMPARISON:
+                    comparison = compare(entry.getLong(column), operands[i]);
+
+                    break;
+
+                case DOUBLE_COMPARISON:
+                    comparison = compare(Double.compare(entry.getDouble(column),
+                                Double.longBitsToDouble(operands[i])), 0);
+
+                    break;
+
+                case KEY_COMPARISON:
+                    comparison = compare(entry.getKey(column, (IKeyGenerator) arguments[i]),
+                            operands[i]);
+
+                    break;
+
+                default:
+                    comparison = entry.isEqual(column, arguments[i]) ? EQUAL : GREATER;
+
+                    break;
+            }
+            if ((matches[i] & comparison) == 0) {
+                return false;
+            }
+        }
+        for (RowFilter filter : filters) {
+            if (!filter.include(entry)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Copies the instructions into the given program, returning the filters that could not be
+     * compiled as a single filter, or null if there are none
+     */
+    public RowFilter compileInstructions(FilterProgram program) {
+        for (int i = 0; i < size; i++) {
+            program.add(opcodes[i], columns[i], operands[i], matches[i], arguments[i]);
+        }
+        if (filters.length == 0) {
+            return null;
+        }
+        if (filters.length == 1) {
+            return filters[0];
+        }
+        FilterProgram ret = new FilterProgram();
+        ret.filters = filters;
+
+        return ret;
+    }
+
+    /**
+     * A program is already compiled: its instructions are copied into the given program
+     */
+    @Override public void compile(FilterProgram program) {
+        for (int i = 0; i < size; i++) {
+            program.add(opcodes[i], columns[i], operands[i], matches[i], arguments[i]);
+        }
+        for (RowFilter filter : filters) {
+            program.addFilter(filter);
+        }
+    }
+
+    /**
+     * Returns the comparison result -LOWER, EQUAL or GREATER- of the given values
+     */
+    private static int compare(long value, long operand) {
+        return (value < operand) ? LOWER : ((value == operand) ? EQUAL : GREATER);
+    }
+
+    private void add(int opcode, int column, long operand, int match, Object argument) {
+        if (size == opcodes.length) {
+            int capacity = size * 2;
+            int[] grownOpcodes = new int[capacity];
+            int[] grownColumns = new int[capacity];
+            long[] grownOperands = new long[capacity];
+            int[] grownMatches = new int[capacity];
+            Object[] grownArguments = new Object[capacity];
+            System.arraycopy(opcodes, 0, grownOpcodes, 0, size);
+            System.arraycopy(columns, 0, grownColumns, 0, size);
+            System.arraycopy(operands, 0, grownOperands, 0, size);
+            System.arraycopy(matches, 0, grownMatches, 0, size);
+            System.arraycopy(arguments, 0, grownArguments, 0, size);
+            opcodes = grownOpcodes;
+            columns = grownColumns;
+            operands = grownOperands;
+            matches = grownMatches;
+            arguments = grownArguments;
+        }
+        opcodes[size] = opcode;
+        columns[size] = column;
+        operands[size] = operand;
+        matches[size] = match;
+        arguments[size] = argument;
+        size++;
+    }
+}
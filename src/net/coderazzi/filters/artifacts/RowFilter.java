@@ -25,6 +25,8 @@
 
 package net.coderazzi.filters.artifacts;
 
+import java.text.Format;
+
 /**
  * <p>Class defined for compatibility with Java 6</p>
  *
@@ -39,6 +41,123 @@ abstract public class RowFilter {
      */
     public abstract boolean include(RowFilter.Entry entry);
 
+    /**
+     * <p>Evaluates the filter on the given rows, selecting the included ones in the result,
+     * initially empty. If candidates are given, only those rows need to be selected.</p>
+     *
+     * <p>The default implementation invokes {@link #include(RowFilter.Entry)} on each candidate
+     * row; composed filters can override it to reuse previous evaluations.</p>
+     */
+    public void include(RowFilter.Rows rows, RowSelection candidates, RowSelection result) {
+        rows.evaluate(this, candidates, result);
+    }
+
+    /**
+     * <p>Returns true if the filter currently includes every row -as the filter of an editor
+     * without content-, so that it does not need to be evaluated at all.</p>
+     *
+     * <p>The default implementation returns false.</p>
+     */
+    public boolean includesAll() {
+        return false;
+    }
+
+    /**
+     * <p>Returns true if this filter can only include rows also included by the given filter;
+     * that is, it can be evaluated just on the rows included by the previous filter.</p>
+     *
+     * <p>The default implementation returns false.</p>
+     */
+    public boolean isNarrowerThan(RowFilter previous) {
+        return false;
+    }
+
+    /**
+     * <p>Adds to the program the instructions to evaluate this filter, as part of a conjunction.
+     * Filters composed of other filters can add their instructions, and filters comparing a
+     * column with a constant operand can add the equivalent comparison.</p>
+     *
+     * <p>The default implementation adds the filter itself, to be evaluated as is.</p>
+     */
+    public void compile(FilterProgram program) {
+        program.addFilter(this);
+    }
+
+    /**
+     * <p>Conversion of values into long keys, that filters can compare instead of the values
+     * themselves -for example, dates truncated to the precision of their format-.</p>
+     */
+    public interface IKeyGenerator {
+
+        /**
+         * Returns the key for the given non null value
+         */
+        public long getKey(Object value);
+    }
+
+    /**
+     * <p>Set of rows evaluated at once by a filter.</p>
+     */
+    public static abstract class Rows {
+
+        /**
+         * Returns the number of rows
+         */
+        public abstract int getSize();
+
+        /**
+         * Returns an object identifying the content of the rows: it is a different instance
+         * -not equal- after any change in the content. Filters can use it to validate previous
+         * evaluations.
+         */
+        public abstract Object getContentVersion();
+
+        /**
+         * Returns true if the evaluation has been cancelled; any result computed afterwards is
+         * undefined.
+         */
+        public abstract boolean isCancelled();
+
+        /**
+         * Updates a selection of the rows made on a previous content version, to reflect the
+         * changes in the content since: the inserted rows are added unselected, and the deleted
+         * rows are removed. Filters can use it to update previous evaluations, instead of
+         * evaluating again every row.
+         *
+         * @return  the rows inserted or updated since the given version, which must be
+         *          evaluated again, or null if the changes are not known -the default
+         *          implementation-, in which case the selection is left unmodified
+         */
+        public RowSelection updateSelection(Object version, RowSelection selection) {
+            return null;
+        }
+
+        /**
+         * Selects in the result, initially empty, the rows included by the filter, invoking
+         * {@link RowFilter#include(RowFilter.Entry)} on each row -or on each candidate row, if
+         * candidates are given-.
+         */
+        public abstract void evaluate(RowFilter filter, RowSelection candidates,
+                                      RowSelection result);
+
+        /**
+         * Returns an index of the given column, sorted by the keys of the given generator, or
+         * null if not available -the default implementation-.
+         */
+        public ColumnIndex getColumnIndex(int column, IKeyGenerator generator) {
+            return null;
+        }
+
+        /**
+         * Returns a trigram index of the given column, on the text produced by the given format
+         * -or the string representation of the values, if null-, or null if not available -the
+         * default implementation-.
+         */
+        public TrigramIndex getTrigramIndex(int column, Format format) {
+            return null;
+        }
+    }
+
     /**
      * <p>Class defined for compatibility with Java 6</p>
      */
@@ -53,10 +172,90 @@ abstract public class RowFilter {
             return (value == null) ? "" : value.toString();
         }
 
+        /**
+         * Returns the value at the specified index formatted with the given {@link Format}, or
+         * its string value if no format is given. Null values are returned as the empty string.
+         * <br>
+         * Subclasses can override it to cache the formatted values; formats are then identified
+         * by instance, and must not be modified once used.
+         */
+        public String getStringValue(int index, Format format) {
+            if (format == null) {
+                return getStringValue(index);
+            }
+            Object value = getValue(index);
+            if (value == null) {
+                return "";
+            }
+            // formats are not thread safe, and filters can be evaluated in parallel
+            synchronized (format) {
+                return format.format(value);
+            }
+        }
+
         /**
          * Returns the value at the specified index.
          */
         public abstract Object getValue(int index);
 
+        /**
+         * Returns true if the value at the specified index is null.
+         */
+        public boolean isNull(int index) {
+            return getValue(index) == null;
+        }
+
+        /**
+         * Returns the value at the specified index, that must be a non null {@link Number}, as an
+         * int. Subclasses can override it to avoid boxing the value.
+         */
+        public int getInt(int index) {
+            return ((Number) getValue(index)).intValue();
+        }
+
+        /**
+         * Returns the value at the specified index, that must be a non null {@link Number}, as a
+         * long. Subclasses can override it to avoid boxing the value.
+         */
+        public long getLong(int index) {
+            return ((Number) getValue(index)).longValue();
+        }
+
+        /**
+         * Returns the value at the specified index, that must be a non null {@link Number}, as a
+         * double. Subclasses can override it to avoid boxing the value.
+         */
+        public double getDouble(int index) {
+            return ((Number) getValue(index)).doubleValue();
+        }
+
+        /**
+         * Returns the key of the value at the specified index, that must be non null, as
+         * computed by the given generator. Subclasses can override it to cache the keys;
+         * generators are then identified by instance, and must always return the same key
+         * for the same value.
+         */
+        public long getKey(int index, IKeyGenerator generator) {
+            return generator.getKey(getValue(index));
+        }
+
+        /**
+         * Returns true if the value at the specified index equals the given value, or both are
+         * null. Subclasses can override it to compare encoded values; the given value must then
+         * not be modified.
+         */
+        public boolean isEqual(int index, Object value) {
+            Object left = getValue(index);
+
+            return (left == null) ? (value == null) : left.equals(value);
+        }
+
+        /**
+         * Returns the value at the specified index, that must be a non null {@link Boolean}.
+         */
+        public boolean getBoolean(int index) {
+            return ((Boolean) getValue(index)).booleanValue();
+        }
+
     }
 }
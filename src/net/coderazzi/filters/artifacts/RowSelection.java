@@ -0,0 +1,393 @@
+/**
+ * Author:  Luis M Pena  ( lu@coderazzi.net )
+ * License: MIT License
+ *
+ * Copyright (c) 2007 Luis M. Pena  -  lu@coderazzi.net
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.coderazzi.filters.artifacts;
+
+/**
+ * <p>Set of selected rows in a model, stored as a bitset.</p>
+ *
+ * <p>A rank directory, rebuilt lazily after any modification, holds the number of selected rows
+ * before each block of 512 rows, so that both the position of a row among the selected ones
+ * -its rank- and the row at a given position -select- are obtained in constant time, or
+ * logarithmic in the number of blocks. Sequential access to the selected rows is optimized.</p>
+ *
+ * <p>It is used by the {@link TableModelFilter} to map view and model rows, requiring around
+ * one bit per model row, instead of one int per model row and another per view row.</p>
+ *
+ * @author  Luis M Pena - lu@coderazzi.net
+ */
+public class RowSelection {
+
+    /** Each block in the rank directory contains (1 << BLOCK_SHIFT) words */
+    private static final int BLOCK_SHIFT = 3;
+
+    /** The bitset; bits beyond size are always clear */
+    private long[] words;
+
+    /** Number of rows in the model */
+    private int size;
+
+    /** Number of selected rows before each block, and, at the end, in the whole set */
+    private int[] ranks = new int[1];
+
+    /** Whether the rank directory is up to date */
+    private boolean ranked = true;
+
+    /** Last position obtained with select, and its associated row; only valid if ranked */
+    private int lastPosition = -1;
+    private int lastRow;
+
+    /**
+     * Creates an empty selection for the given number of rows
+     */
+    public RowSelection(int size) {
+        this.size = size;
+        this.words = new long[getWords(size)];
+        this.ranked = false;
+    }
+
+    /**
+     * Creates a copy of the given selection
+     */
+    public RowSelection(RowSelection copy) {
+        this.size = copy.size;
+        this.words = new long[getWords(size)];
+        this.ranked = false;
+        System.arraycopy(copy.words, 0, words, 0, words.length);
+    }
+
+    /**
+     * Returns the number of rows in the model -selected or not-
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the number of selected rows
+     */
+    public int getCount() {
+        ensureRanked();
+
+        return ranks[ranks.length - 1];
+    }
+
+    /**
+     * Returns true if the given row is selected
+     */
+    public boolean get(int row) {
+        return (words[row >>> 6] & (1L << row)) != 0;
+    }
+
+    /**
+     * Selects the given row.<br>
+     * Rows in different words -that is, separated by 64 or more rows- can be selected
+     * concurrently from different threads.
+     */
+    public void set(int row) {
+        words[row >>> 6] |= 1L << row;
+        ranked = false;
+    }
+
+    /**
+     * Unselects the given row
+     */
+    public void clear(int row) {
+        words[row >>> 6] &= ~(1L << row);
+        ranked = false;
+    }
+
+    /**
+     * Selects all the rows
+     */
+    public void setAll() {
+        int n = getWords(size);
+        for (int i = 0; i < n; i++) {
+            words[i] = -1L;
+        }
+        clearRange(size, n << 6);
+        ranked = false;
+    }
+
+    /**
+     * Selects the rows from the given one -inclusive- to the given one -exclusive-
+     */
+    public void setRange(int from, int to) {
+        while (from < to) {
+            int length = Math.min(64 - (from & 63), to - from);
+            deposit(from, -1L, length);
+            from += length;
+        }
+        ranked = false;
+    }
+
+    /**
+     * Returns the first selected row at or after the given one, or -1 if there is none
+     */
+    public int nextSetBit(int row) {
+        if (row >= size) {
+            return -1;
+        }
+
+        int w = row >>> 6;
+        long word = words[w] & (-1L << row);
+        int n = getWords(size);
+        while (word == 0) {
+            if (++w == n) {
+                return -1;
+            }
+            word = words[w];
+        }
+
+        return (w << 6) + Long.numberOfTrailingZeros(word);
+    }
+
+    /**
+     * Returns the number of selected rows before the given one; that is, its position among the
+     * selected rows, if selected, or the position where it would be displayed, otherwise.
+     */
+    public int rank(int row) {
+        ensureRanked();
+        if (ranks[ranks.length - 1] == size) {
+            // every row is selected: identity mapping
+            return row;
+        }
+
+        int w = row >>> 6;
+        int ret = ranks[w >> BLOCK_SHIFT];
+        for (int i = (w >> BLOCK_SHIFT) << BLOCK_SHIFT; i < w; i++) {
+            ret += Long.bitCount(words[i]);
+        }
+        if ((row & 63) != 0) {
+            ret += Long.bitCount(words[w] & ((1L << row) - 1));
+        }
+
+        return ret;
+    }
+
+    /**
+     * Returns the selected row at the given position
+     */
+    public int select(int position) {
+        ensureRanked();
+        if (ranks[ranks.length - 1] == size) {
+            return position;
+        }
+        if (position == lastPosition) {
+            return lastRow;
+        }
+
+        int row;
+        if ((position == (lastPosition + 1)) && (lastPosition >= 0)) {
+            row = nextSetBit(lastRow + 1);
+        } else {
+            // locate the last block with less than position selected rows before it
+            int low = 0;
+            int high = ranks.length - 2;
+            while (low < high) {
+                int mid = (low + high + 1) >>> 1;
+                if (ranks[mid] <= position) {
+                    low = mid;
+                } else {
+                    high = mid - 1;
+                }
+            }
+
+            int remaining = position - ranks[low];
+            int w = low << BLOCK_SHIFT;
+            int bits = Long.bitCount(words[w]);
+            while (remaining >= bits) {
+                remaining -= bits;
+                bits = Long.bitCount(words[++w]);
+            }
+
+            long word = words[w];
+            while (remaining-- > 0) {
+                word &= word - 1;
+            }
+            row = (w << 6) + Long.numberOfTrailingZeros(word);
+        }
+        lastPosition = position;
+        lastRow = row;
+
+        return row;
+    }
+
+    /**
+     * Inserts count unselected rows at the given position, shifting the subsequent rows
+     */
+    public void insert(int row, int count) {
+        int newSize = size + count;
+        int n = getWords(newSize);
+        if (words.length < n) {
+            long[] grown = new long[Math.max(n, (words.length / 4) * 5)];
+            System.arraycopy(words, 0, grown, 0, words.length);
+            words = grown;
+        }
+
+        // move the rows, starting at the end, in chunks of 64 rows
+        for (int end = size; end > row;) {
+            int length = Math.min(64, end - row);
+            end -= length;
+            deposit(end + count, extract(end), length);
+        }
+        clearRange(row, row + count);
+        size = newSize;
+        ranked = false;
+    }
+
+    /**
+     * Removes count rows at the given position, shifting the subsequent rows
+     */
+    public void remove(int row, int count) {
+        for (int start = row + count; start < size; start += 64) {
+            deposit(start - count, extract(start), Math.min(64, size - start));
+        }
+        clearRange(size - count, size);
+        size -= count;
+        ranked = false;
+    }
+
+    /**
+     * Keeps selected only the rows also selected in the given selection, of the same size
+     */
+    public void and(RowSelection other) {
+        int n = getWords(size);
+        for (int i = 0; i < n; i++) {
+            words[i] &= other.words[i];
+        }
+        ranked = false;
+    }
+
+    /**
+     * Selects also the rows selected in the given selection, of the same size
+     */
+    public void or(RowSelection other) {
+        int n = getWords(size);
+        for (int i = 0; i < n; i++) {
+            words[i] |= other.words[i];
+        }
+        ranked = false;
+    }
+
+    /**
+     * Unselects the rows selected in the given selection, of the same size
+     */
+    public void andNot(RowSelection other) {
+        int n = getWords(size);
+        for (int i = 0; i < n; i++) {
+            words[i] &= ~other.words[i];
+        }
+        ranked = false;
+    }
+
+    /**
+     * Selects the rows not selected, and unselects the selected ones
+     */
+    public void invert() {
+        int n = getWords(size);
+        for (int i = 0; i < n; i++) {
+            words[i] = ~words[i];
+        }
+        clearRange(size, n << 6);
+        ranked = false;
+    }
+
+    /**
+     * Returns the approximated memory used by the selection, in bytes
+     */
+    public long getMemoryUsage() {
+        return 32 + (8L * words.length) + (4L * ranks.length);
+    }
+
+    /**
+     * Rebuilds the rank directory, if needed
+     */
+    private void ensureRanked() {
+        if (!ranked) {
+            int n = getWords(size);
+            int blocks = (n + (1 << BLOCK_SHIFT) - 1) >> BLOCK_SHIFT;
+            if (ranks.length != (blocks + 1)) {
+                ranks = new int[blocks + 1];
+            }
+
+            int count = 0;
+            for (int i = 0; i < n; i++) {
+                if ((i & ((1 << BLOCK_SHIFT) - 1)) == 0) {
+                    ranks[i >> BLOCK_SHIFT] = count;
+                }
+                count += Long.bitCount(words[i]);
+            }
+            ranks[blocks] = count;
+            lastPosition = -1;
+            ranked = true;
+        }
+    }
+
+    /**
+     * Returns the 64 rows starting at the given one, as a word
+     */
+    private long extract(int row) {
+        int w = row >>> 6;
+        long ret = words[w] >>> row;
+        if (((row & 63) != 0) && ((w + 1) < words.length)) {
+            ret |= words[w + 1] << -row;
+        }
+
+        return ret;
+    }
+
+    /**
+     * Stores the first length rows in the given word -up to 64- starting at the given row
+     */
+    private void deposit(int row, long value, int length) {
+        long mask = (length == 64) ? -1L : ((1L << length) - 1);
+        int w = row >>> 6;
+        int offset = row & 63;
+        value &= mask;
+        words[w] = (words[w] & ~(mask << offset)) | (value << offset);
+        if ((offset + length) > 64) {
+            words[w + 1] = (words[w + 1] & ~(mask >>> -offset)) | (value >>> -offset);
+        }
+    }
+
+    /**
+     * Unselects the rows in the given range
+     */
+    private void clearRange(int from, int to) {
+        while (from < to) {
+            int length = Math.min(64 - (from & 63), to - from);
+            deposit(from, 0L, length);
+            from += length;
+        }
+    }
+
+    /**
+     * Returns the number of words required for the given number of rows
+     */
+    private static int getWords(int rows) {
+        return (rows + 63) >>> 6;
+    }
+}
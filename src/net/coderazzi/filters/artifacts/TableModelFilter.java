@@ -25,8 +25,16 @@
 
 package net.coderazzi.filters.artifacts;
 
-import java.util.Arrays;
+import java.text.Format;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
+import javax.swing.SwingUtilities;
 import javax.swing.event.TableModelEvent;
 import javax.swing.event.TableModelListener;
 import javax.swing.table.AbstractTableModel;
@@ -37,7 +45,9 @@ import javax.swing.table.TableModel;
  * <p>Implementation of a {@link ITableModelFilter}</p>
  *
  * <p>It tries to mimic the behaviour in the Java 6 model. In special, updates to the model do not
- * imply reapplying the filter in the modified rows.</p>
+ * imply reapplying the filter in the modified rows, unless live filtering is enabled -see
+ * {@link #setFilterOnUpdates(boolean)}-. Insertions and deletions are, by default, handled
+ * incrementally, evaluating only the affected rows.</p>
  *
  * @author  Luis M Pena - lu@coderazzi.net
  */
@@ -45,25 +55,97 @@ public class TableModelFilter extends AbstractTableModel implements ITableModelF
 
 	private static final long serialVersionUID = 8464799419424149436L;
 
-	/** Mapping from view rows to model rows */
-    private int[] rowsMapper = new int[0];
+    /** Number of chunks per available processor used on parallel evaluations */
+    private static final int CHUNKS_PER_THREAD = 4;
 
-    /** Number of valid elements in rowsMapper */
-    private int validRows = 0;
+    /** Maximum number of model changes kept to update the previous evaluations of the filters */
+    private static final int MAX_CONTENT_CHANGES = 64;
 
-    /**
-     * Mapping from model rows to view rows; it only contains valid information if viewMap is true
-     */
-    private int[] viewsMapper = new int[0];
+    /** The filter evaluation checks for cancellation every (CANCELLATION_MASK + 1) rows */
+    private static final int CANCELLATION_MASK = 0x3ff;
+
+    /** Executor shared by all instances to evaluate filters in parallel, created on demand */
+    private static ExecutorService parallelExecutor;
+
+    /** Executor shared by all instances to evaluate filters in background, created on demand */
+    private static ExecutorService backgroundExecutor;
+
+    /** Factory of the threads used by the executors, which must not prevent the VM exit */
+    private static ThreadFactory threadFactory = new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread ret = new Thread(r, "TableModelFilter");
+                ret.setDaemon(true);
+
+                return ret;
+            }
+        };
 
-    /** Whether the information in viewsMapper is up to date */
-    private boolean viewMap;
+	/** The model rows included in the view, which map view and model rows */
+    private RowSelection selection = new RowSelection(0);
 
     /** Listener to the original tableModel events */
     private TableModelListener tableModelListener = new TableListener();
 
     /** The RowFilter.Entry instance passed to the filter */
-    private RowFilterEntry rowFilterEntry = new RowFilterEntry();
+    private RowFilterEntry rowFilterEntry = new RowFilterEntry(true);
+
+    /** Whether model changes are handled incrementally */
+    private boolean incrementalUpdates = true;
+
+    /** Whether the filter is reapplied on the updated rows */
+    private boolean filterOnUpdates;
+
+    /** Minimum number of rows to evaluate the filter in parallel; disabled if not positive */
+    private int parallelThreshold;
+
+    /**
+     * Incremented each time that the filter is reapplied; any evaluation started for a previous
+     * generation is abandoned.
+     */
+    private volatile int filterGeneration;
+
+    /** Duration, in nanoseconds, of the last filter set, until its result was installed */
+    private long lastFilterDuration;
+
+    /** Time when the filter being evaluated in background was set, if any */
+    private long backgroundFilterStart;
+
+    /** Whether a filter is being evaluated in background */
+    private boolean backgroundFilterPending;
+
+    /** Replaced on each change received from the model, identifying its content */
+    private ContentVersion contentVersion = new ContentVersion();
+
+    /**
+     * Whether the selection contains exactly the rows included by the filter; it is not the case
+     * after updates in the model not reapplying the filter, nor while a filter is being
+     * evaluated in background.
+     */
+    private boolean exactSelection;
+
+    /** Snapshot of the model values read by the filters; null if disabled */
+    private ColumnCache columnCache;
+
+    /** Indexes of the columns, created on demand; null if disabled */
+    private ColumnIndex[] columnIndexes;
+
+    /** Generators requested on each column, not yet indexed */
+    private RowFilter.IKeyGenerator[] columnIndexRequests;
+
+    /** Generators that could not index each column, not retried until the failed row changes */
+    private IndexFailure[] columnIndexFailures;
+
+    /** Trigram indexes of the columns, created on demand; null if disabled */
+    private TrigramIndex[] trigramIndexes;
+
+    /** Formats requested on each column, not yet indexed -NO_FORMAT for no format- */
+    private Object[] trigramIndexRequests;
+
+    /** Formats that could not index each column, not retried until the failed row changes */
+    private IndexFailure[] trigramIndexFailures;
+
+    /** Request of a trigram index on the string representation of the values */
+    private static final Object NO_FORMAT = new Object();
 
     /** The current filter, if any */
     RowFilter tableFilter;
@@ -91,6 +173,7 @@ public class TableModelFilter extends AbstractTableModel implements ITableModelF
         }
 
         this.tableModel = tableModel;
+        this.contentVersion = new ContentVersion();
 
         if (this.tableModel != null) {
             this.tableModel.addTableModelListener(tableModelListener);
@@ -105,6 +188,15 @@ public class TableModelFilter extends AbstractTableModel implements ITableModelF
      */
     void handleModifiedModel() {
         rowFilterEntry.columns = tableModel.getColumnCount();
+        if (columnCache != null) {
+            columnCache.reset(tableModel);
+        }
+        if (columnIndexes != null) {
+            resetColumnIndexes();
+        }
+        if (trigramIndexes != null) {
+            resetTrigramIndexes();
+        }
         reapplyFilter();
     }
 
@@ -118,12 +210,516 @@ public class TableModelFilter extends AbstractTableModel implements ITableModelF
 
 
     /**
+     * Returns the current filter, if any
+     */
+    public RowFilter getRowFilter() {
+        return tableFilter;
+    }
+
+    /**
+     * Sets the filter; if it is declared narrower than the current one, only the currently
+     * visible rows are evaluated
+     *
      * @see  ITableModelFilter#setRowFilter(RowFilter)
+     * @see  RowFilter#isNarrowerThan(RowFilter)
      */
     public void setRowFilter(RowFilter newValue) {
+        setRowFilter(newValue, isNarrowing(newValue));
+    }
+
+    /**
+     * <p>Sets the filter, specifying whether it can only exclude rows included by the current
+     * filter -as when the filter is updated to be more restrictive-.</p>
+     *
+     * <p>In this case, only the currently visible rows are evaluated, unless the model has
+     * notified updates since the last time that the filter was applied.</p>
+     */
+    public void setRowFilter(RowFilter newValue, boolean narrowing) {
+        long start = System.nanoTime();
         this.tableFilter = newValue;
-        reapplyFilter();
+        backgroundFilterPending = false;
+        reapplyFilter(narrowing);
         fireTableDataChanged();
+        lastFilterDuration = System.nanoTime() - start;
+    }
+
+    /**
+     * Returns the time, in milliseconds, that the last filter set took to be applied and
+     * notified -until its result was installed, if evaluated in background-. If a filter is still
+     * being evaluated in background, and for longer, it returns the time spent so far.
+     */
+    public long getLastFilterDuration() {
+        long ret = lastFilterDuration;
+        if (backgroundFilterPending) {
+            ret = Math.max(ret, System.nanoTime() - backgroundFilterStart);
+        }
+
+        return ret / 1000000;
+    }
+
+    /**
+     * <p>Sets the filter that determines which rows, if any, should be hidden from the view,
+     * evaluating it on a background thread.</p>
+     *
+     * <p>The view keeps its current content until the evaluation completes; the new content is
+     * then installed on the event dispatch thread, and notified as a full data change. An
+     * evaluation still in progress is cancelled as soon as a newer filter is set, in background
+     * or not.</p>
+     *
+     * <p>Note that both the filter and the table model are accessed from the background thread,
+     * and must support it. If rows are updated during the evaluation, they are evaluated again
+     * synchronously when the result is installed; on any other change, the whole filter is
+     * reapplied.</p>
+     */
+    public void setRowFilterInBackground(RowFilter newValue) {
+        setRowFilterInBackground(newValue, isNarrowing(newValue));
+    }
+
+    /**
+     * Sets the filter, evaluating it on a background thread, and specifying whether it can only
+     * exclude rows included by the current filter.
+     *
+     * @see  #setRowFilterInBackground(RowFilter)
+     * @see  #setRowFilter(RowFilter, boolean)
+     */
+    public void setRowFilterInBackground(RowFilter newValue, boolean narrowing) {
+        RowSelection candidates = getCandidates(narrowing);
+        this.tableFilter = newValue;
+        if (!backgroundFilterPending) {
+            // an evaluation still in progress is superseded: the wait goes on
+            backgroundFilterStart = System.nanoTime();
+            backgroundFilterPending = true;
+        }
+        // until installed, the selection holds the rows of a previous filter: no later filter
+        // can be narrowed on it
+        exactSelection = false;
+        getBackgroundExecutor().execute(new BackgroundFilter(++filterGeneration,
+                (candidates == null) ? null : new RowSelection(candidates)));
+    }
+
+    /**
+     * Returns true if the given filter is declared narrower than the current one
+     */
+    private boolean isNarrowing(RowFilter newValue) {
+        return (newValue != null) && (tableFilter != null) && (newValue != tableFilter)
+            && newValue.isNarrowerThan(tableFilter);
+    }
+
+    /**
+     * Returns the rows to evaluate when a new filter is set: null, for all the rows, unless the
+     * filter is narrowing and the current selection is exact.
+     */
+    private RowSelection getCandidates(boolean narrowing) {
+        return (narrowing && exactSelection && (selection.getSize() == tableModel.getRowCount()))
+            ? selection : null;
+    }
+
+
+    /**
+     * <p>Sets whether row insertions, deletions and updates in the model are handled
+     * incrementally.</p>
+     *
+     * <p>In this mode, only the inserted rows are evaluated by the filter, the view mapping is
+     * shifted in place, and the listeners receive fine grained rows inserted / deleted / updated
+     * events, so the table keeps its selection and scroll position. Otherwise, any row insertion
+     * or deletion implies reapplying the filter on the whole model, notified as a full data
+     * change. It is enabled by default.</p>
+     */
+    public void setIncrementalUpdates(boolean set) {
+        incrementalUpdates = set;
+    }
+
+    /**
+     * Returns true if the changes in the model are handled incrementally
+     *
+     * @see  #setIncrementalUpdates(boolean)
+     */
+    public boolean isIncrementalUpdates() {
+        return incrementalUpdates;
+    }
+
+
+    /**
+     * <p>Sets whether the filter is reapplied on the rows updated in the model (live
+     * filtering).</p>
+     *
+     * <p>When set, only the updated rows are tested again against the current filter: rows that
+     * do not match anymore are removed from the view, and rows that match now are added, in
+     * place. Otherwise, as in Java 6, updated rows keep their visibility until the filter is
+     * reapplied. It is disabled by default.</p>
+     */
+    public void setFilterOnUpdates(boolean set) {
+        filterOnUpdates = set;
+    }
+
+    /**
+     * Returns true if the filter is reapplied on the updated rows
+     *
+     * @see  #setFilterOnUpdates(boolean)
+     */
+    public boolean isFilterOnUpdates() {
+        return filterOnUpdates;
+    }
+
+
+    /**
+     * <p>Sets the minimum number of rows in the model to evaluate the filter in parallel. The
+     * model is then split in chunks, each one evaluated on a separate thread, with its own
+     * {@link RowFilter.Entry}. Below this threshold, or if the threshold is not positive -the
+     * default-, the filter is evaluated sequentially.</p>
+     *
+     * <p>Note that, in parallel mode, both the filter and the table model are accessed
+     * concurrently from several threads, and must therefore be thread safe.</p>
+     */
+    public void setParallelThreshold(int rows) {
+        parallelThreshold = rows;
+    }
+
+    /**
+     * Returns the minimum number of rows to evaluate the filter in parallel
+     *
+     * @see  #setParallelThreshold(int)
+     */
+    public int getParallelThreshold() {
+        return parallelThreshold;
+    }
+
+
+    /**
+     * <p>Sets whether the values read by the filter are kept in a columnar snapshot of the model,
+     * so that each cell is only requested once to the underlying model, even across filter
+     * passes.</p>
+     *
+     * <p>Columns declaring the Integer, Long or Double classes are stored in primitive arrays,
+     * which filters can access without boxing through the typed accessors in
+     * {@link RowFilter.Entry}. Columns declaring the Boolean or String classes, or enumerations,
+     * are dictionary encoded, storing one byte per cell while they have up to 256 distinct values,
+     * so that comparing them with {@link RowFilter.Entry#isEqual(int, Object)} -as filters on
+     * rendered columns do- is a code comparison.</p>
+     *
+     * <p>Values requested with a {@link Format} -as filters on dates or numbers based on their
+     * text representation- are also kept formatted, and values requested as keys -as comparisons
+     * on dates- keep their keys, for the last format or key generator used on each column.</p>
+     *
+     * <p>Cached values are invalidated per row as the model notifies its changes, so the model
+     * must notify every change in its values. The cache is not used by filters evaluated in
+     * background, as the model can change meanwhile. It is disabled by default; disabling it
+     * releases the cached values.</p>
+     *
+     * @see  #getColumnCacheMemoryUsage()
+     */
+    public void setColumnCache(boolean enable) {
+        if (!enable) {
+            columnCache = null;
+        } else if (columnCache == null) {
+            ColumnCache cache = new ColumnCache();
+            cache.reset(tableModel);
+            columnCache = cache;
+        }
+    }
+
+    /**
+     * Returns true if the values read by the filter are cached
+     *
+     * @see  #setColumnCache(boolean)
+     */
+    public boolean isColumnCache() {
+        return columnCache != null;
+    }
+
+    /**
+     * Returns the approximated memory used by the column cache, in bytes, or 0 if not enabled.
+     * The cached values are not accounted for, as they are shared with the model.
+     */
+    public long getColumnCacheMemoryUsage() {
+        return (columnCache == null) ? 0 : columnCache.getMemoryUsage();
+    }
+
+    /**
+     * <p>Sets whether columns can be indexed, so that comparison filters -like &quot;&gt;
+     * 1000&quot;- select the matching rows by binary search on the sorted values of the column,
+     * instead of evaluating every row.</p>
+     *
+     * <p>As building an index is more expensive than evaluating the filter on every row, a column
+     * is only indexed when requested a second time by the filters -for example, when the user
+     * modifies the filter on that column-. The index is updated afterwards as the model notifies
+     * its changes, so the model must notify every change in its values. Indexes are not used by
+     * filters evaluated in background. It is disabled by default; disabling it releases the
+     * indexes.</p>
+     *
+     * @see  #getColumnIndexesMemoryUsage()
+     */
+    public void setColumnIndexes(boolean enable) {
+        if (!enable) {
+            columnIndexes = null;
+            columnIndexRequests = null;
+            columnIndexFailures = null;
+        } else if (columnIndexes == null) {
+            resetColumnIndexes();
+        }
+    }
+
+    /**
+     * Discards all the column indexes
+     */
+    private void resetColumnIndexes() {
+        int columns = tableModel.getColumnCount();
+        columnIndexes = new ColumnIndex[columns];
+        columnIndexRequests = new RowFilter.IKeyGenerator[columns];
+        columnIndexFailures = new IndexFailure[columns];
+    }
+
+    /**
+     * Returns true if columns can be indexed
+     *
+     * @see  #setColumnIndexes(boolean)
+     */
+    public boolean isColumnIndexes() {
+        return columnIndexes != null;
+    }
+
+    /**
+     * Returns the approximated memory used by the column indexes, in bytes, or 0 if not enabled.
+     */
+    public long getColumnIndexesMemoryUsage() {
+        long ret = 0;
+        if (columnIndexes != null) {
+            for (ColumnIndex index : columnIndexes) {
+                if (index != null) {
+                    ret += index.getMemoryUsage();
+                }
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * Returns the index for the given column and key generator, creating it if requested for the
+     * second time, or null if indexes are not enabled or the column values cannot be indexed
+     */
+    ColumnIndex getColumnIndex(int column, RowFilter.IKeyGenerator generator) {
+        if ((columnIndexes == null) || (column >= columnIndexes.length)) {
+            return null;
+        }
+        ColumnIndex ret = columnIndexes[column];
+        try {
+            if ((ret == null) || (ret.getKeyGenerator() != generator)) {
+                if (IndexFailure.matches(columnIndexFailures[column], generator)) {
+                    return null;
+                }
+                if (columnIndexRequests[column] != generator) {
+                    columnIndexRequests[column] = generator;
+                    return null;
+                }
+                ret = new ColumnIndex(tableModel, column, generator);
+                columnIndexes[column] = ret;
+            } else {
+                ret.applyChanges();
+            }
+        } catch (RuntimeException ex) {
+            // the generator does not support some value in the column
+            columnIndexFailures[column] = new IndexFailure(generator, ex);
+            columnIndexes[column] = null;
+            ret = null;
+        }
+
+        return ret;
+    }
+
+    /**
+     * <p>Sets whether text columns can be indexed by trigrams -sequences of three characters-, so
+     * that filters searching for a text, like &quot;*smith*&quot;, only evaluate the rows
+     * containing all the trigrams of that text, instead of every row.</p>
+     *
+     * <p>As with {@link #setColumnIndexes(boolean)}, a column is only indexed when requested a
+     * second time by the filters, and the index is updated afterwards as the model notifies its
+     * changes. Trigram indexes require more memory than the column indexes, roughly 4 bytes per
+     * character in the column. It is disabled by default; disabling it releases the indexes.</p>
+     *
+     * @see  #getTrigramIndexesMemoryUsage()
+     */
+    public void setTrigramIndexes(boolean enable) {
+        if (!enable) {
+            trigramIndexes = null;
+            trigramIndexRequests = null;
+            trigramIndexFailures = null;
+        } else if (trigramIndexes == null) {
+            resetTrigramIndexes();
+        }
+    }
+
+    /**
+     * Discards all the trigram indexes
+     */
+    private void resetTrigramIndexes() {
+        int columns = tableModel.getColumnCount();
+        trigramIndexes = new TrigramIndex[columns];
+        trigramIndexRequests = new Object[columns];
+        trigramIndexFailures = new IndexFailure[columns];
+    }
+
+    /**
+     * Returns true if text columns can be indexed by trigrams
+     *
+     * @see  #setTrigramIndexes(boolean)
+     */
+    public boolean isTrigramIndexes() {
+        return trigramIndexes != null;
+    }
+
+    /**
+     * Returns the approximated memory used by the trigram indexes, in bytes, or 0 if not enabled.
+     */
+    public long getTrigramIndexesMemoryUsage() {
+        long ret = 0;
+        if (trigramIndexes != null) {
+            for (TrigramIndex index : trigramIndexes) {
+                if (index != null) {
+                    ret += index.getMemoryUsage();
+                }
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * Returns the trigram index for the given column and format, creating it if requested for the
+     * second time, or null if trigram indexes are not enabled or the column values cannot be
+     * formatted
+     */
+    TrigramIndex getTrigramIndex(int column, Format format) {
+        if ((trigramIndexes == null) || (column >= trigramIndexes.length)) {
+            return null;
+        }
+        TrigramIndex ret = trigramIndexes[column];
+        if ((ret == null) || (ret.getFormat() != format)) {
+            Object request = (format == null) ? NO_FORMAT : format;
+            if (IndexFailure.matches(trigramIndexFailures[column], request)) {
+                return null;
+            }
+            if (trigramIndexRequests[column] != request) {
+                trigramIndexRequests[column] = request;
+                return null;
+            }
+            try {
+                ret = new TrigramIndex(tableModel, column, format);
+            } catch (RuntimeException ex) {
+                // the format does not support some value in the column
+                trigramIndexFailures[column] = new IndexFailure(request, ex);
+                ret = null;
+            }
+            trigramIndexes[column] = ret;
+        }
+
+        return ret;
+    }
+
+    /**
+     * Updates the column and trigram indexes to reflect a change in the model
+     */
+    private void updateIndexes(TableModelEvent e) {
+        if (e.getLastRow() == Integer.MAX_VALUE) {
+            if (columnIndexes != null) {
+                resetColumnIndexes();
+            }
+            if (trigramIndexes != null) {
+                resetTrigramIndexes();
+            }
+        } else {
+            if (columnIndexes != null) {
+                updateIndexes(columnIndexes, e);
+                clearFailures(columnIndexFailures, e);
+            }
+            if (trigramIndexes != null) {
+                updateIndexes(trigramIndexes, e);
+                clearFailures(trigramIndexFailures, e);
+            }
+        }
+    }
+
+    /**
+     * Updates the given indexes to reflect a change in the model; indexes that cannot be
+     * updated are discarded
+     */
+    private static void updateIndexes(AbstractColumnIndex[] indexes, TableModelEvent e) {
+        int firstRow = e.getFirstRow();
+        int lastRow = e.getLastRow();
+        int column = e.getColumn();
+        for (int i = 0; i < indexes.length; i++) {
+            AbstractColumnIndex index = indexes[i];
+            if (index != null) {
+                try {
+                    switch (e.getType()) {
+
+                        case TableModelEvent.INSERT:
+                            index.insertRows(firstRow, lastRow - firstRow + 1);
+
+                            break;
+
+                        case TableModelEvent.DELETE:
+                            index.deleteRows(firstRow, lastRow - firstRow + 1);
+
+                            break;
+
+                        default:
+                            if ((column == TableModelEvent.ALL_COLUMNS) || (column == i)) {
+                                index.updateRows(firstRow, lastRow);
+                            }
+
+                            break;
+                    }
+                } catch (RuntimeException ex) {
+                    // the generator or format does not support the new values
+                    indexes[i] = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Forgets the index failures whose unsupported value could have been fixed by the given
+     * change -that is, the row holding it has been deleted or updated-, renumbering the rows of
+     * the other failures
+     */
+    private static void clearFailures(IndexFailure[] failures, TableModelEvent e) {
+        int firstRow = e.getFirstRow();
+        int lastRow = e.getLastRow();
+        int column = e.getColumn();
+        for (int i = 0; i < failures.length; i++) {
+            IndexFailure failure = failures[i];
+            if (failure != null) {
+                boolean changed = (failure.row < 0)
+                    || ((failure.row >= firstRow) && (failure.row <= lastRow));
+                switch (e.getType()) {
+
+                    case TableModelEvent.INSERT:
+                        if (failure.row >= firstRow) {
+                            failure.row += lastRow - firstRow + 1;
+                        }
+
+                        break;
+
+                    case TableModelEvent.DELETE:
+                        if (changed) {
+                            failures[i] = null;
+                        } else if (failure.row > lastRow) {
+                            failure.row -= lastRow - firstRow + 1;
+                        }
+
+                        break;
+
+                    default:
+                        if (changed
+                                && ((column == TableModelEvent.ALL_COLUMNS) || (column == i))) {
+                            failures[i] = null;
+                        }
+
+                        break;
+                }
+            }
+        }
     }
 
 
@@ -131,57 +727,395 @@ public class TableModelFilter extends AbstractTableModel implements ITableModelF
      * Returns the location of index in terms of the underlying model.
      */
     public int convertRowIndexToModel(int index) {
-        return rowsMapper[index];
+        return selection.select(index);
     }
 
     /**
      * Returns the location of index in terms of the view.
      */
     public int convertRowIndexToView(int index) {
-        if (!viewMap) {
-            viewMap = true;
-            viewsMapper = resizeArray(viewsMapper, tableModel.getRowCount());
-            for (int i = 0; i < validRows; i++)
-                viewsMapper[rowsMapper[i]] = i;
-        }
+        return selection.get(index) ? selection.rank(index) : -1;
+    }
 
-        return viewsMapper[index];
+
+    /**
+     * Reapplies the filter, updating the selection of included rows
+     */
+    void reapplyFilter() {
+        reapplyFilter(false);
     }
 
     /**
-     * Resizes a buffer to have the desired size. Whole array is set to -1
+     * Reapplies the filter, evaluating only the currently selected rows if narrowing
      */
-    private int[] resizeArray(int[] original, int size) {
-        int[] ret;
-        if ((original.length >= size) && (original.length <= ((size / 4) * 5))) {
-            ret = original;
+    private void reapplyFilter(boolean narrowing) {
+        RowSelection candidates = getCandidates(narrowing);
+        int rows = tableModel.getRowCount();
+        RowSelection target = new RowSelection(rows);
+        filterRows(tableFilter, candidates, target, rows, ++filterGeneration, contentVersion,
+            true);
+        selection = target;
+        exactSelection = true;
+    }
+
+    /**
+     * Evaluates the filter on the model rows -or only on the candidates, if given-, selecting
+     * the included ones in the target. The evaluation is abandoned, with an undefined result, as
+     * soon as the generation is obsolete. The filter receives all the rows at once, so it can
+     * reuse its previous evaluations.
+     *
+     * @param  version  the content version of the model, when the evaluation was requested
+     * @param  cached   whether the values can be read from the column cache, if enabled
+     */
+    void filterRows(RowFilter filter, RowSelection candidates, RowSelection target, int rows,
+                    int generation, Object version, boolean cached) {
+        if ((filter == null) || filter.includesAll()) {
+            target.setAll();
         } else {
-            ret = new int[size];
+            filter.include(new ModelRows(rows, generation, version, cached), candidates, target);
         }
-        Arrays.fill(ret, -1);
+    }
 
-        return ret;
+    /**
+     * Evaluates the filter on each model row -or candidate row-, selecting the included ones in
+     * the target.
+     *
+     * @see  #filterRows(RowFilter, RowSelection, RowSelection, int, int, Object, boolean)
+     */
+    void evaluateRows(RowFilter filter, RowSelection candidates, RowSelection target, int rows,
+                      int generation, boolean cached) {
+        if ((filter != null) && (parallelThreshold > 0) && (rows >= parallelThreshold)) {
+            filterRowsInParallel(filter, candidates, target, rows, generation, cached);
+        } else {
+            new FilterTask(filter, candidates, target, 0, rows, generation, cached).run();
+        }
     }
 
+    /**
+     * Evaluates the filter splitting the model in chunks, evaluated concurrently. The chunks are
+     * aligned on 64 rows, so that each one updates its own words in the target selection. The
+     * current thread evaluates itself the first chunk.
+     */
+    private void filterRowsInParallel(RowFilter filter, RowSelection candidates,
+                                      RowSelection target, int rows, int generation,
+                                      boolean cached) {
+        int threads = Runtime.getRuntime().availableProcessors();
+        int chunks = Math.min(rows, threads * CHUNKS_PER_THREAD);
+        int chunkSize = (((rows + chunks - 1) / chunks) + 63) & ~63;
+        List<Future<?>> results = new ArrayList<Future<?>>(chunks);
+        ExecutorService executor = getParallelExecutor();
+
+        for (int from = chunkSize; from < rows; from += chunkSize) {
+            results.add(executor.submit(new FilterTask(filter, candidates, target, from,
+                        Math.min(rows, from + chunkSize), generation, cached)));
+        }
+
+        Throwable failure = null;
+        try {
+            new FilterTask(filter, candidates, target, 0, Math.min(rows, chunkSize), generation,
+                cached).run();
+        } catch (RuntimeException ex) {
+            failure = ex;
+        }
+
+        boolean interrupted = false;
+        for (Future<?> result : results) {
+            boolean completed = false;
+            while (!completed) {
+                try {
+                    result.get();
+                    completed = true;
+                } catch (InterruptedException ie) {
+                    // the tasks are writing on the target selection, so they must be waited for
+                    interrupted = true;
+                } catch (ExecutionException ee) {
+                    if (failure == null) {
+                        failure = ee.getCause();
+                    }
+                    completed = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        }
+        if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+        if (failure != null) {
+            throw new RuntimeException(failure);
+        }
+    }
 
     /**
-     * Reapplies the filter, updating the rowsMapper and validRows private variables
+     * Updates a selection made on the given content version to reflect the model changes
+     * received until the target version.
+     *
+     * @see  RowFilter.Rows#updateSelection(Object, RowSelection)
      */
-    void reapplyFilter() {
-        viewMap = false;
+    static RowSelection updateSelection(Object version, ContentVersion target,
+                                        RowSelection selection) {
+        List<ContentVersion> changes = new ArrayList<ContentVersion>();
+        for (ContentVersion each = target; each != version; each = each.previous) {
+            if (each == null) {
+                return null;
+            }
+            changes.add(each);
+        }
+        RowSelection ret = new RowSelection(selection.getSize());
+        for (int i = changes.size() - 1; i >= 0; i--) {
+            ContentVersion change = changes.get(i);
+            int count = change.lastRow - change.firstRow + 1;
+            switch (change.type) {
+
+                case TableModelEvent.INSERT:
+                    selection.insert(change.firstRow, count);
+                    ret.insert(change.firstRow, count);
+                    ret.setRange(change.firstRow, change.lastRow + 1);
+
+                    break;
+
+                case TableModelEvent.DELETE:
+                    selection.remove(change.firstRow, count);
+                    ret.remove(change.firstRow, count);
+
+                    break;
+
+                default:
+                    ret.setRange(change.firstRow, Math.min(change.lastRow + 1, ret.getSize()));
+
+                    break;
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * Installs the result of a background evaluation, unless a newer filter has been set
+     * meanwhile. If rows have been updated during the evaluation, only those rows are evaluated
+     * again; the filter is reapplied if rows have been inserted or deleted, as the background
+     * thread could then have read any row at a shifted position.
+     *
+     * @param  target  the included rows, or null if the evaluation failed
+     */
+    void installBackgroundFilter(int generation, Object version, RowSelection target) {
+        if (generation == filterGeneration) {
+            if (target == null) {
+                reapplyFilter();
+            } else {
+                if (version != contentVersion) {
+                    target = updateBackgroundFilter(version, target);
+                }
+                if (target == null) {
+                    reapplyFilter();
+                } else {
+                    selection = target;
+                    exactSelection = true;
+                }
+            }
+            fireTableDataChanged();
+            backgroundFilterPending = false;
+            lastFilterDuration = System.nanoTime() - backgroundFilterStart;
+        }
+    }
 
+    /**
+     * Updates the result of a background evaluation, made on the given content version, to the
+     * current model content.
+     *
+     * @return  the updated result, or null if the changes are not row updates
+     */
+    private RowSelection updateBackgroundFilter(Object version, RowSelection target) {
+        for (ContentVersion each = contentVersion; each != version; each = each.previous) {
+            if ((each == null) || (each.type != TableModelEvent.UPDATE)) {
+                return null;
+            }
+        }
+        RowSelection changed = updateSelection(version, contentVersion, target);
         int rows = tableModel.getRowCount();
-        rowsMapper = resizeArray(rowsMapper, rows);
-        validRows = 0;
+        if ((changed == null) || (target.getSize() != rows)) {
+            return null;
+        }
+        if (changed.getCount() > 0) {
+            RowSelection part = new RowSelection(rows);
+            filterRows(tableFilter, changed, part, rows, ++filterGeneration, contentVersion,
+                true);
+            target.andNot(changed);
+            target.or(part);
+        }
+
+        return target;
+    }
+
+    /**
+     * Returns the executor used on parallel evaluations, creating it if needed
+     */
+    private static synchronized ExecutorService getParallelExecutor() {
+        if (parallelExecutor == null) {
+            int threads = Runtime.getRuntime().availableProcessors();
+            parallelExecutor = Executors.newFixedThreadPool(threads, threadFactory);
+        }
+
+        return parallelExecutor;
+    }
 
-        for (int j = 0; j < rows; j++) {
-            rowFilterEntry.modelRow = j;
-            if ((tableFilter == null) || tableFilter.include(rowFilterEntry)) {
-                rowsMapper[validRows++] = j;
+    /**
+     * Returns the executor used on background evaluations, creating it if needed
+     */
+    private static synchronized ExecutorService getBackgroundExecutor() {
+        if (backgroundExecutor == null) {
+            backgroundExecutor = Executors.newSingleThreadExecutor(threadFactory);
+        }
+
+        return backgroundExecutor;
+    }
+
+    /**
+     * Returns true if the filter, if any, includes the given model row
+     */
+    private boolean include(int modelRow) {
+        if (includesAll()) {
+            return true;
+        }
+        rowFilterEntry.setModelRow(modelRow);
+
+        return tableFilter.include(rowFilterEntry);
+    }
+
+    /**
+     * Returns true if there is no filter, or it includes every row
+     */
+    private boolean includesAll() {
+        return (tableFilter == null) || tableFilter.includesAll();
+    }
+
+    /**
+     * Handles the insertion of rows in the model, evaluating only the new rows
+     */
+    void rowsInserted(int firstRow, int lastRow) {
+        int position = selection.rank(firstRow);
+        int size = 0;
+
+        selection.insert(firstRow, lastRow - firstRow + 1);
+        for (int row = firstRow; row <= lastRow; row++) {
+            if (include(row)) {
+                selection.set(row);
+                size++;
             }
         }
+        if (size > 0) {
+            fireTableRowsInserted(position, position + size - 1);
+        }
     }
 
+    /**
+     * Handles the deletion of rows in the model, removing them from the view
+     */
+    void rowsDeleted(int firstRow, int lastRow) {
+        int from = selection.rank(firstRow);
+        int to = selection.rank(lastRow + 1);
+
+        selection.remove(firstRow, lastRow - firstRow + 1);
+        if (to > from) {
+            fireTableRowsDeleted(from, to - 1);
+        }
+    }
+
+    /**
+     * Handles the update of rows in the model, notifying the change on the visible ones
+     */
+    void rowsUpdated(int firstRow, int lastRow, int column) {
+        if (filterOnUpdates) {
+            refilterRows(firstRow, lastRow, column);
+        } else {
+            exactSelection = false;
+
+            int from = selection.rank(firstRow);
+            int to = selection.rank(lastRow + 1);
+
+            if (to > from) {
+                fireTableChanged(new TableModelEvent(this, from, to - 1, column));
+            }
+        }
+    }
+
+    /**
+     * Reapplies the filter on the given model rows, patching the view mapping in place. Each
+     * contiguous run of updated, removed or added view rows is notified as a single event, applied
+     * to the mapping just before being sent, so listeners always see a consistent model.
+     */
+    private void refilterRows(int firstRow, int lastRow, int column) {
+        int[] changed = new int[lastRow - firstRow + 1];
+        int position = selection.rank(firstRow);
+        int runType = TableModelEvent.UPDATE;
+        int runStart = position;
+        int runLength = 0;
+
+        for (int row = firstRow; row <= lastRow; row++) {
+            boolean visible = selection.get(row);
+            int type;
+            if (include(row)) {
+                type = visible ? TableModelEvent.UPDATE : TableModelEvent.INSERT;
+            } else if (visible) {
+                type = TableModelEvent.DELETE;
+            } else {
+                continue;
+            }
+            if (type != runType) {
+                position = flushRun(runType, runStart, runLength, changed, column, position);
+                runType = type;
+                runStart = position;
+                runLength = 0;
+            }
+            if (type != TableModelEvent.INSERT) {
+                position++;
+            }
+            changed[runLength++] = row;
+        }
+        flushRun(runType, runStart, runLength, changed, column, position);
+    }
+
+    /**
+     * Applies and notifies a run of view changes, as computed by refilterRows.
+     *
+     * @param   rows  the model rows in the run
+     *
+     * @return  the position, adjusted to the applied changes
+     */
+    private int flushRun(int type, int start, int length, int[] rows, int column, int position) {
+        if (length > 0) {
+            int end = start + length - 1;
+            switch (type) {
+
+                case TableModelEvent.INSERT:
+                    for (int i = 0; i < length; i++) {
+                        selection.set(rows[i]);
+                    }
+                    fireTableRowsInserted(start, end);
+
+                    return position + length;
+
+                case TableModelEvent.DELETE:
+                    for (int i = 0; i < length; i++) {
+                        selection.clear(rows[i]);
+                    }
+                    fireTableRowsDeleted(start, end);
+
+                    return position - length;
+
+                default:
+                    fireTableChanged(new TableModelEvent(this, start, end, column));
+
+                    break;
+            }
+        }
+
+        return position;
+    }
 
     @Override public Class<?> getColumnClass(int columnIndex) {
         return tableModel.getColumnClass(columnIndex);
@@ -199,7 +1133,7 @@ public class TableModelFilter extends AbstractTableModel implements ITableModelF
 
 
     public int getRowCount() {
-        return validRows;
+        return selection.getCount();
     }
 
 
@@ -220,14 +1154,275 @@ public class TableModelFilter extends AbstractTableModel implements ITableModelF
 
     /**
      * Private implementation of the {@link RowFilter.Entry}, to access the elements in the table
-     * row
+     * row. Without column cache, the last value read from the model is kept until the row
+     * changes, so that typed accessors do not read twice the same cell.
      */
     class RowFilterEntry extends RowFilter.Entry {
         int columns;
         int modelRow;
+        boolean cached;
+        private int lastIndex = -1;
+        private Object lastValue;
+
+        RowFilterEntry(boolean cached) {
+            this.cached = cached;
+        }
+
+        void setModelRow(int row) {
+            modelRow = row;
+            lastIndex = -1;
+            lastValue = null;
+        }
 
         @Override public Object getValue(int index) {
-            return tableModel.getValueAt(modelRow, index);
+            ColumnCache cache = cached ? columnCache : null;
+            if (cache != null) {
+                return cache.getValue(modelRow, index);
+            }
+            if (index != lastIndex) {
+                lastValue = tableModel.getValueAt(modelRow, index);
+                lastIndex = index;
+            }
+
+            return lastValue;
+        }
+
+        @Override public String getStringValue(int index, Format format) {
+            ColumnCache cache = cached ? columnCache : null;
+
+            return ((cache == null) || (format == null)) ? super.getStringValue(index, format)
+                                                         : cache.getFormattedValue(modelRow, index, format);
+        }
+
+        @Override public long getKey(int index, RowFilter.IKeyGenerator generator) {
+            ColumnCache cache = cached ? columnCache : null;
+
+            return (cache == null) ? super.getKey(index, generator)
+                                   : cache.getKey(modelRow, index, generator);
+        }
+
+        @Override public boolean isNull(int index) {
+            ColumnCache cache = cached ? columnCache : null;
+
+            return (cache == null) ? super.isNull(index) : cache.isNull(modelRow, index);
+        }
+
+        @Override public int getInt(int index) {
+            ColumnCache cache = cached ? columnCache : null;
+
+            return (cache == null) ? super.getInt(index) : cache.getInt(modelRow, index);
+        }
+
+        @Override public long getLong(int index) {
+            ColumnCache cache = cached ? columnCache : null;
+
+            return (cache == null) ? super.getLong(index) : cache.getLong(modelRow, index);
+        }
+
+        @Override public double getDouble(int index) {
+            ColumnCache cache = cached ? columnCache : null;
+
+            return (cache == null) ? super.getDouble(index) : cache.getDouble(modelRow, index);
+        }
+
+        @Override public boolean isEqual(int index, Object value) {
+            ColumnCache cache = cached ? columnCache : null;
+
+            return (cache == null) ? super.isEqual(index, value)
+                                   : cache.isEqual(modelRow, index, value);
+        }
+
+        @Override public boolean getBoolean(int index) {
+            ColumnCache cache = cached ? columnCache : null;
+
+            return (cache == null) ? super.getBoolean(index) : cache.getBoolean(modelRow, index);
+        }
+    }
+
+
+    /**
+     * Evaluation of the filter on a range of model rows -or only on the candidate rows in the
+     * range, if given-, selecting the included rows in the target.
+     */
+    class FilterTask implements Runnable {
+        private RowFilterEntry entry;
+        private RowFilter filter;
+        private RowSelection candidates;
+        private RowSelection target;
+        private int from;
+        private int to;
+        private int generation;
+
+        FilterTask(RowFilter filter, RowSelection candidates, RowSelection target, int from,
+                   int to, int generation, boolean cached) {
+            this.entry = new RowFilterEntry(cached);
+            this.filter = filter;
+            this.candidates = candidates;
+            this.target = target;
+            this.from = from;
+            this.to = to;
+            this.generation = generation;
+            entry.columns = rowFilterEntry.columns;
+        }
+
+        public void run() {
+            int row = (candidates == null) ? from : candidates.nextSetBit(from);
+            for (int evaluated = 1; (row >= 0) && (row < to); evaluated++) {
+                if (((evaluated & CANCELLATION_MASK) == 0) && (generation != filterGeneration)) {
+                    break;
+                }
+                entry.setModelRow(row);
+                if ((filter == null) || filter.include(entry)) {
+                    target.set(row);
+                }
+                row = (candidates == null) ? (row + 1) : candidates.nextSetBit(row + 1);
+            }
+        }
+    }
+
+
+    /**
+     * The model rows, as evaluated by the filters in a single pass
+     */
+    class ModelRows extends RowFilter.Rows {
+        private Object version;
+        private int rows;
+        private int generation;
+        private boolean cached;
+
+        ModelRows(int rows, int generation, Object version, boolean cached) {
+            this.rows = rows;
+            this.generation = generation;
+            this.version = version;
+            this.cached = cached;
+        }
+
+        @Override public int getSize() {
+            return rows;
+        }
+
+        @Override public Object getContentVersion() {
+            return version;
+        }
+
+        @Override public boolean isCancelled() {
+            return generation != filterGeneration;
+        }
+
+        @Override public RowSelection updateSelection(Object previous, RowSelection selection) {
+            return (version instanceof ContentVersion)
+                ? TableModelFilter.updateSelection(previous, (ContentVersion) version, selection)
+                : null;
+        }
+
+        @Override public void evaluate(RowFilter filter, RowSelection candidates,
+                                       RowSelection result) {
+            evaluateRows(filter, candidates, result, rows, generation, cached);
+        }
+
+        @Override public ColumnIndex getColumnIndex(int column,
+                                                    RowFilter.IKeyGenerator generator) {
+            return cached ? TableModelFilter.this.getColumnIndex(column, generator) : null;
+        }
+
+        @Override public TrigramIndex getTrigramIndex(int column, Format format) {
+            return cached ? TableModelFilter.this.getTrigramIndex(column, format) : null;
+        }
+    }
+
+
+    /**
+     * Failure to index a column for the given request -key generator or format-, caused by the
+     * value at the given row; the row is negative if not known.
+     */
+    static final class IndexFailure {
+        final Object request;
+        int row;
+
+        IndexFailure(Object request, RuntimeException cause) {
+            this.request = request;
+            this.row = (cause instanceof AbstractColumnIndex.UnsupportedValueException)
+                ? ((AbstractColumnIndex.UnsupportedValueException) cause).row : -1;
+        }
+
+        /**
+         * Returns true if the given failure happened for the given request
+         */
+        static boolean matches(IndexFailure failure, Object request) {
+            return (failure != null) && (failure.request == request);
+        }
+    }
+
+
+    /**
+     * Content of the model, identified by instance. Versions created on incremental changes are
+     * linked to the previous version, recording the change between both, so that previous
+     * evaluations can be updated instead of discarded; only the last MAX_CONTENT_CHANGES are
+     * kept.
+     */
+    static final class ContentVersion {
+        volatile ContentVersion previous;
+        final int type;
+        final int firstRow;
+        final int lastRow;
+
+        ContentVersion() {
+            this.type = TableModelEvent.UPDATE;
+            this.firstRow = 0;
+            this.lastRow = Integer.MAX_VALUE;
+        }
+
+        ContentVersion(ContentVersion previous, TableModelEvent e) {
+            this.type = e.getType();
+            this.firstRow = e.getFirstRow();
+            this.lastRow = e.getLastRow();
+            if ((firstRow >= 0) && (lastRow != Integer.MAX_VALUE) && (firstRow <= lastRow)) {
+                this.previous = previous;
+                ContentVersion last = this;
+                for (int i = 1; (i < MAX_CONTENT_CHANGES) && (last != null); i++) {
+                    last = last.previous;
+                }
+                if (last != null) {
+                    last.previous = null;
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Evaluation of the filter on a background thread
+     */
+    class BackgroundFilter implements Runnable {
+        private RowFilter filter = tableFilter;
+        private int rows = tableModel.getRowCount();
+        private Object version = contentVersion;
+        private RowSelection candidates;
+        private int generation;
+
+        BackgroundFilter(int generation, RowSelection candidates) {
+            this.generation = generation;
+            this.candidates = candidates;
+        }
+
+        public void run() {
+            if (generation == filterGeneration) {
+                RowSelection target = new RowSelection(rows);
+                try {
+                    filterRows(filter, candidates, target, rows, generation, version, false);
+                } catch (RuntimeException ex) {
+                    // the filter is then reapplied synchronously, reporting any error
+                    target = null;
+                }
+                if (generation == filterGeneration) {
+                    final RowSelection included = target;
+                    SwingUtilities.invokeLater(new Runnable() {
+                            public void run() {
+                                installBackgroundFilter(generation, version, included);
+                            }
+                        });
+                }
+            }
         }
     }
 
@@ -237,12 +1432,43 @@ public class TableModelFilter extends AbstractTableModel implements ITableModelF
      */
     class TableListener implements TableModelListener {
         public void tableChanged(TableModelEvent e) {
-            if (tableFilter == null) {
-                fireTableChanged(e);
-            } else if (e.getFirstRow() == TableModelEvent.HEADER_ROW) {
+            contentVersion = new ContentVersion(contentVersion, e);
+
+            int firstRow = e.getFirstRow();
+            int lastRow = e.getLastRow();
+            if ((columnCache != null) && (firstRow != TableModelEvent.HEADER_ROW)) {
+                columnCache.tableChanged(e);
+            }
+            if (firstRow != TableModelEvent.HEADER_ROW) {
+                updateIndexes(e);
+            }
+            if (firstRow == TableModelEvent.HEADER_ROW) {
                 handleModifiedModel();
                 fireTableChanged(e);
-            } else if (e.getType() == TableModelEvent.UPDATE && e.getLastRow()!=Integer.MAX_VALUE) {
+            } else if (incrementalUpdates && (lastRow != Integer.MAX_VALUE)) {
+                switch (e.getType()) {
+
+                    case TableModelEvent.INSERT:
+                        rowsInserted(firstRow, lastRow);
+
+                        break;
+
+                    case TableModelEvent.DELETE:
+                        rowsDeleted(firstRow, lastRow);
+
+                        break;
+
+                    default:
+                        rowsUpdated(firstRow, lastRow, e.getColumn());
+
+                        break;
+                }
+            } else if (includesAll()) {
+                reapplyFilter();
+                fireTableChanged(e);
+            } else if (!filterOnUpdates && e.getType() == TableModelEvent.UPDATE
+                    && lastRow != Integer.MAX_VALUE) {
+                exactSelection = false;
                 fireTableChanged(e);
             } else {
                 reapplyFilter();
@@ -0,0 +1,383 @@
+/**
+ * Author:  Luis M Pena  ( lu@coderazzi.net )
+ * License: MIT License
+ *
+ * Copyright (c) 2007 Luis M. Pena  -  lu@coderazzi.net
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.coderazzi.filters.artifacts;
+
+import java.text.Format;
+import java.util.Arrays;
+
+import javax.swing.table.TableModel;
+
+
+/**
+ * <p>Inverted index of the text of a column in a {@link TableModel}: for each sequence of three
+ * characters -trigram- it keeps the sorted list of rows whose text contains it. Filters searching
+ * for a given text can then evaluate only the rows containing all its trigrams.</p>
+ *
+ * <p>The text of each value is its string representation, or the string produced by a given
+ * {@link Format}. Trigrams are indexed with their US-ASCII characters in lower case, so the
+ * index supports as well filters ignoring case.</p>
+ *
+ * <p>Indexes are created by the {@link TableModelFilter} when requested by a filter, and updated
+ * incrementally with the changes in the model.</p>
+ *
+ * @author  Luis M Pena - lu@coderazzi.net
+ */
+public class TrigramIndex extends AbstractColumnIndex {
+
+    /** Number of characters in each indexed sequence */
+    public static final int GRAM_LENGTH = 3;
+
+    /** The text of each row */
+    private String[] texts;
+
+    /** Number of rows */
+    private int size;
+
+    /** Hash table of trigrams; slots without postings are free */
+    private long[] grams;
+
+    /** The sorted rows of each trigram */
+    private int[][] postings;
+
+    /** Number of rows in each postings list */
+    private int[] counts;
+
+    /** Number of trigrams in the hash table */
+    private int used;
+
+    private TableModel model;
+    private int column;
+    private Format format;
+
+    TrigramIndex(TableModel model, int column, Format format) {
+        this.model = model;
+        this.column = column;
+        this.format = format;
+        build();
+    }
+
+    /**
+     * Returns the format used to obtain the text of the values, null for their string
+     * representation
+     */
+    public Format getFormat() {
+        return format;
+    }
+
+    /**
+     * Returns the rows whose text can contain the given text, or null if the text is too short
+     * to use the index. The returned rows must still be verified.
+     */
+    public RowSelection getCandidates(CharSequence text) {
+        long[] required = getGrams(text);
+        if (required == null) {
+            return null;
+        }
+        RowSelection ret = new RowSelection(size);
+        int[] lists = new int[required.length];
+        for (int i = 0; i < required.length; i++) {
+            int slot = find(required[i]);
+            if (postings[slot] == null) {
+                return ret;
+            }
+            lists[i] = slot;
+        }
+        // intersect the lists, starting with the shortest one
+        int shortest = 0;
+        for (int i = 1; i < lists.length; i++) {
+            if (counts[lists[i]] < counts[lists[shortest]]) {
+                shortest = i;
+            }
+        }
+        int[] rows = postings[lists[shortest]];
+        int count = counts[lists[shortest]];
+        for (int i = 0; i < count; i++) {
+            int row = rows[i];
+            boolean contained = true;
+            for (int j = 0; contained && (j < lists.length); j++) {
+                contained = (j == shortest) || (search(lists[j], row) >= 0);
+            }
+            if (contained) {
+                ret.set(row);
+            }
+        }
+
+        return ret;
+    }
+
+    @Override long getMemoryUsage() {
+        long ret = (3 * ColumnCache.ARRAY_HEADER_SIZE)
+            + ((long) ColumnCache.REFERENCE_SIZE * texts.length)
+            + ((long) (8 + ColumnCache.REFERENCE_SIZE + 4) * grams.length);
+        for (int i = 0; i < postings.length; i++) {
+            if (postings[i] != null) {
+                ret += ColumnCache.ARRAY_HEADER_SIZE + (4L * postings[i].length);
+            }
+        }
+
+        return ret;
+    }
+
+    @Override void insertRows(int firstRow, int count) {
+        if (isLargeChange(count, size)) {
+            build();
+        } else {
+            shiftRows(firstRow, count);
+            int length = size + count;
+            if (texts.length < length) {
+                String[] grown = new String[Math.max(length, (texts.length / 4) * 5)];
+                System.arraycopy(texts, 0, grown, 0, size);
+                texts = grown;
+            }
+            System.arraycopy(texts, firstRow, texts, firstRow + count, size - firstRow);
+            size = length;
+            for (int row = firstRow; row < (firstRow + count); row++) {
+                texts[row] = getText(row);
+                add(row, texts[row]);
+            }
+        }
+    }
+
+    @Override void deleteRows(int firstRow, int count) {
+        int end = firstRow + count;
+        for (int row = firstRow; row < end; row++) {
+            remove(row, texts[row]);
+        }
+        shiftRows(end, -count);
+        System.arraycopy(texts, end, texts, firstRow, size - end);
+        size -= count;
+        Arrays.fill(texts, size, size + count, null);
+    }
+
+    @Override void updateRows(int firstRow, int lastRow) {
+        if (isLargeChange(lastRow - firstRow + 1, size)) {
+            build();
+        } else {
+            for (int row = firstRow; row <= lastRow; row++) {
+                String text = getText(row);
+                if (!text.equals(texts[row])) {
+                    remove(row, texts[row]);
+                    texts[row] = text;
+                    add(row, text);
+                }
+            }
+        }
+    }
+
+    /**
+     * Indexes the whole column
+     */
+    private void build() {
+        size = model.getRowCount();
+        texts = new String[size];
+        grams = new long[64];
+        postings = new int[64][];
+        counts = new int[64];
+        used = 0;
+        for (int row = 0; row < size; row++) {
+            texts[row] = getText(row);
+            add(row, texts[row]);
+        }
+    }
+
+    /**
+     * Returns the text of the given row
+     *
+     * @throws  UnsupportedValueException  if the format does not support the value
+     */
+    private String getText(int row) {
+        Object value = model.getValueAt(row, column);
+        if (value == null) {
+            return "";
+        }
+        if (format == null) {
+            return value.toString();
+        }
+        try {
+            synchronized (format) {
+                return format.format(value);
+            }
+        } catch (RuntimeException ex) {
+            throw new UnsupportedValueException(row, ex);
+        }
+    }
+
+    /**
+     * Returns the distinct trigrams in the given text, sorted, or null if the text is too short
+     */
+    private static long[] getGrams(CharSequence text) {
+        int length = text.length() - GRAM_LENGTH + 1;
+        if (length <= 0) {
+            return null;
+        }
+        long[] ret = new long[length];
+        long gram = (((long) toLowerCase(text.charAt(0))) << 16) | toLowerCase(text.charAt(1));
+        for (int i = 0; i < length; i++) {
+            gram = ((gram << 16) | toLowerCase(text.charAt(i + 2))) & 0xffffffffffffL;
+            ret[i] = gram;
+        }
+        Arrays.sort(ret);
+        int distinct = 1;
+        for (int i = 1; i < length; i++) {
+            if (ret[i] != ret[distinct - 1]) {
+                ret[distinct++] = ret[i];
+            }
+        }
+        if (distinct < length) {
+            long[] trimmed = new long[distinct];
+            System.arraycopy(ret, 0, trimmed, 0, distinct);
+            ret = trimmed;
+        }
+
+        return ret;
+    }
+
+    /** Lower case conversion, restricted to US-ASCII */
+    private static char toLowerCase(char c) {
+        return ((c >= 'A') && (c <= 'Z')) ? (char) (c + ('a' - 'A')) : c;
+    }
+
+    /**
+     * Adds the given row, not yet indexed, to the postings of the trigrams in its text
+     */
+    private void add(int row, String text) {
+        long[] rowGrams = getGrams(text);
+        if (rowGrams != null) {
+            for (long gram : rowGrams) {
+                int slot = find(gram);
+                if (postings[slot] == null) {
+                    grams[slot] = gram;
+                    postings[slot] = new int[2];
+                    if (++used > (grams.length / 2)) {
+                        rehash();
+                        slot = find(gram);
+                    }
+                }
+                int count = counts[slot];
+                int position = (count == 0) || (postings[slot][count - 1] < row)
+                    ? count : -search(slot, row) - 1;
+                if (count == postings[slot].length) {
+                    int[] grown = new int[count * 2];
+                    System.arraycopy(postings[slot], 0, grown, 0, count);
+                    postings[slot] = grown;
+                }
+                int[] rows = postings[slot];
+                System.arraycopy(rows, position, rows, position + 1, count - position);
+                rows[position] = row;
+                counts[slot] = count + 1;
+            }
+        }
+    }
+
+    /**
+     * Removes the given row from the postings of the trigrams in its text. Trigrams without rows
+     * are kept in the table, with empty postings.
+     */
+    private void remove(int row, String text) {
+        long[] rowGrams = getGrams(text);
+        if (rowGrams != null) {
+            for (long gram : rowGrams) {
+                int slot = find(gram);
+                int position = search(slot, row);
+                int count = --counts[slot];
+                System.arraycopy(postings[slot], position + 1, postings[slot], position,
+                    count - position);
+            }
+        }
+    }
+
+    /**
+     * Adds the given shift to all the indexed rows starting at the given one
+     */
+    private void shiftRows(int firstRow, int shift) {
+        for (int slot = 0; slot < postings.length; slot++) {
+            int[] rows = postings[slot];
+            if (rows != null) {
+                int count = counts[slot];
+                int position = search(slot, firstRow);
+                for (int i = (position < 0) ? (-position - 1) : position; i < count; i++) {
+                    rows[i] += shift;
+                }
+            }
+        }
+    }
+
+    /**
+     * Binary search of the row in the postings at the given slot, returning its position or, if
+     * not found, -(insertion point) - 1
+     */
+    private int search(int slot, int row) {
+        int[] rows = postings[slot];
+        int low = 0;
+        int high = counts[slot] - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int value = rows[mid];
+            if (value < row) {
+                low = mid + 1;
+            } else if (value > row) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+
+        return -(low + 1);
+    }
+
+    /**
+     * Returns the slot of the given trigram in the hash table, or the free slot to store it
+     */
+    private int find(long gram) {
+        int mask = grams.length - 1;
+        int slot = (int) ((gram * 0x9E3779B97F4A7C15L) >>> 40) & mask;
+        while ((postings[slot] != null) && (grams[slot] != gram)) {
+            slot = (slot + 1) & mask;
+        }
+
+        return slot;
+    }
+
+    /**
+     * Doubles the size of the hash table
+     */
+    private void rehash() {
+        long[] oldGrams = grams;
+        int[][] oldPostings = postings;
+        int[] oldCounts = counts;
+        grams = new long[oldGrams.length * 2];
+        postings = new int[grams.length][];
+        counts = new int[grams.length];
+        for (int i = 0; i < oldGrams.length; i++) {
+            if (oldPostings[i] != null) {
+                int slot = find(oldGrams[i]);
+                grams[slot] = oldGrams[i];
+                postings[slot] = oldPostings[i];
+                counts[slot] = oldCounts[i];
+            }
+        }
+    }
+}
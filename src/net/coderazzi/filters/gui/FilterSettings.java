@@ -48,6 +48,21 @@ public class FilterSettings {
     /** Whether to automatically fill with content the editor field's options */
     public static boolean autoOptions = Boolean.parseBoolean(getString("AutoOptions", "false"));
 
+    /** Whether to extract the auto options on a background thread */
+    public static boolean autoOptionsInBackground = Boolean.parseBoolean(getString("AutoOptions.background", "false"));
+
+    /** The maximum number of auto options on each editor; zero (the default) means no limit */
+    public static int maxAutoOptions = getInteger("AutoOptions.max", 0);
+
+    /** Whether to show the most frequent values when exceeding the maximum number of auto options */
+    public static boolean autoOptionsSampling = Boolean.parseBoolean(getString("AutoOptions.sampling", "false"));
+
+    /** Whether to update the filters while the user types, without waiting for the enter key */
+    public static boolean instantFiltering = Boolean.parseBoolean(getString("InstantFiltering", "false"));
+
+    /** Idle time (milliseconds) after the last keystroke before updating the filter, on instant filtering */
+    public static int instantFilteringDelay = getInteger("InstantFiltering.delay", 150);
+
     /** Whether to ignore case or not. It is false by default (case sensitive) */
     public static boolean ignoreCase = Boolean.parseBoolean(getString("IgnoreCase", "false"));
 
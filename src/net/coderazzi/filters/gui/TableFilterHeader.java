@@ -51,11 +51,14 @@ import javax.swing.event.TableColumnModelListener;
 import javax.swing.table.TableCellRenderer;
 import javax.swing.table.TableColumn;
 import javax.swing.table.TableColumnModel;
+import javax.swing.table.TableModel;
 
 import net.coderazzi.filters.IFilter;
 import net.coderazzi.filters.IFilterObserver;
 import net.coderazzi.filters.IFilterTextParser;
 import net.coderazzi.filters.TableFilter;
+import net.coderazzi.filters.artifacts.ITableModelFilter;
+import net.coderazzi.filters.gui.editor.AutoOptionsExtractor;
 import net.coderazzi.filters.gui.editor.FilterEditor;
 
 
@@ -115,11 +118,23 @@ public class TableFilterHeader extends JPanel {
     /** If true,filter editors will automatically extract the content from the table **/
     private boolean autoOptions=false;
 
+    /** If true, the auto options are extracted on a background thread **/
+    private boolean autoOptionsInBackground = FilterSettings.autoOptionsInBackground;
+
+    /** The extractor of the auto options, shared by all the editors, created on demand **/
+    private AutoOptionsExtractor autoOptionsExtractor;
+
     /** The associated locator to handle the location of the filter in the table header */
     private PositionHelper positionHelper = new PositionHelper(this);
         
 	/** This is the total max number of visible rows (history PLUS options) */
 	int maxVisibleRows = FilterSettings.maxVisiblePopupRows;
+
+	/** If true, filter editors update the filter while the user types */
+	boolean instantFiltering = FilterSettings.instantFiltering;
+
+	/** Idle time, in milliseconds, to wait after the last keystroke on instant filtering */
+	int instantFilteringDelay = FilterSettings.instantFilteringDelay;
     
     /**
      * The columnsController is a glue component, controlling the filters associated to each column
@@ -413,6 +428,41 @@ public class TableFilterHeader extends JPanel {
 		return maxVisibleRows;
 	}
 
+	/** 
+	 * Enables instant filtering: the editors update the filter while the user types, 
+	 * coalescing the keystrokes. The enter key always updates the filter immediately
+	 * @see #setInstantFilteringDelay(int)
+	 */
+	public void setInstantFiltering(boolean enable) {
+		this.instantFiltering = enable;
+		if (columnsController!=null){
+			columnsController.setInstantFiltering(enable, instantFilteringDelay);
+		}
+	}
+
+	/** Returns true if the editors update the filter while the user types */
+	public boolean isInstantFiltering() {
+		return instantFiltering;
+	}
+
+	/**
+	 * Sets the idle time, in milliseconds, to wait after the last keystroke before 
+	 * updating the filter on instant filtering. The editors adapt this delay to the time 
+	 * required to filter the table: cheap updates are applied immediately, and expensive 
+	 * ones wait at least as long as the last filtering took
+	 */
+	public void setInstantFilteringDelay(int delay) {
+		this.instantFilteringDelay = delay;
+		if (columnsController!=null){
+			columnsController.setInstantFiltering(instantFiltering, delay);
+		}
+	}
+
+	/** Returns the idle time, in milliseconds, used on instant filtering */
+	public int getInstantFilteringDelay() {
+		return instantFilteringDelay;
+	}
+
     /** Creates an editor for the given column, customized to the associated type */
     FilterEditor createEditor(int modelColumn) {
         
@@ -422,7 +472,7 @@ public class TableFilterHeader extends JPanel {
         ret.setFilterPosition(modelColumn);
         
         if (!populateBasicEditorOptions(ret, true) && autoOptions){
-        	ret.setAutoOptions(table.getModel());
+        	ret.setAutoOptionsExtractor(getAutoOptionsExtractor());
         }
         return ret;
     }
@@ -433,6 +483,8 @@ public class TableFilterHeader extends JPanel {
         editor.setBackground(getBackground());
         editor.setDisabledForeground(getDisabledForeground());
         editor.setMaxVisibleRows(maxVisibleRows);
+        editor.setInstantFiltering(instantFiltering);
+        editor.setInstantFilteringDelay(instantFilteringDelay);
         Color color =  getDisabledForeground();
         if (color!=null){
         	editor.setDisabledForeground(color);
@@ -568,6 +620,46 @@ public class TableFilterHeader extends JPanel {
 	public boolean isAutoOptions(){
 		return autoOptions;
 	}
+
+	/**
+	 * Sets whether the auto options are extracted on a background thread, posting the changes
+	 * to the editors on the event dispatch thread. Note that the table model is then accessed
+	 * from the background thread, and must support it.
+	 */
+	public void setAutoOptionsInBackground(boolean set){
+		if (autoOptionsInBackground!=set){
+			autoOptionsInBackground=set;
+			if (autoOptions && columnsController != null) {
+	            filtersHandler.enableNotifications(false);
+	            columnsController.setAutoOptions(true);
+	            filtersHandler.enableNotifications(true);
+			}
+		}
+	}
+
+	/** Returns true if the auto options are extracted on a background thread */
+	public boolean isAutoOptionsInBackground(){
+		return autoOptionsInBackground;
+	}
+
+	/** 
+	 * Returns the extractor of the auto options, shared by all the editors, so that the table
+	 * model is traversed only once to extract the options of all the columns.<br>
+	 * The options are extracted from the unfiltered model: the rows hidden by the filters 
+	 * must still be offered as options.
+	 */
+	AutoOptionsExtractor getAutoOptionsExtractor(){
+		TableModel model = table.getModel();
+		if (model instanceof ITableModelFilter){
+			model = ((ITableModelFilter) model).getModel();
+		}
+		if (autoOptionsExtractor == null 
+				|| autoOptionsExtractor.getTableModel() != model 
+				|| autoOptionsExtractor.isBackground() != autoOptionsInBackground){
+			autoOptionsExtractor = new AutoOptionsExtractor(model, autoOptionsInBackground);
+		}
+		return autoOptionsExtractor;
+	}
 	
     /** Enables/Disables the filters */
     @Override public void setEnabled(boolean enabled) {
@@ -727,14 +819,22 @@ public class TableFilterHeader extends JPanel {
                 column.editor.setMaxVisibleRows(maxVisibleRows);
             }
     	}
+        
+    	/** Sets the instant filtering flag and delay on all the editors */
+    	public void setInstantFiltering(boolean enable, int delay) {
+            for (FilterColumnPanel column : columns) {
+                column.editor.setInstantFiltering(enable);
+                column.editor.setInstantFilteringDelay(delay);
+            }
+    	}
 
         /** Sets the auto options flag, but not on editors associated to boolean/enumerations */
         public void setAutoOptions(boolean set) {
-        	
+        	AutoOptionsExtractor extractor = set? getAutoOptionsExtractor() : null;
             for (FilterColumnPanel column : columns) {
                 Class<?> c = table.getModel().getColumnClass(column.editor.getFilterPosition());
                 if (!c.equals(Boolean.class) && !c.isEnum()){
-                	column.editor.setAutoOptions(set? table.getModel() : null);
+                	column.editor.setAutoOptionsExtractor(extractor);
                 }
             }
         }
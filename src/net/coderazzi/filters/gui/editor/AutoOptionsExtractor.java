@@ -0,0 +1,729 @@
+/**
+ * Author:  Luis M Pena  ( lu@coderazzi.net )
+ * License: MIT License
+ *
+ * Copyright (c) 2007 Luis M. Pena  -  lu@coderazzi.net
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.coderazzi.filters.gui.editor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import javax.swing.SwingUtilities;
+import javax.swing.event.TableModelEvent;
+import javax.swing.event.TableModelListener;
+import javax.swing.table.TableModel;
+
+/**
+ * Class to extract automatically the options of the {@link FilterEditor}s associated to the
+ * columns of a table model, used when the editors are defined with autoOptions flag.<br>
+ * A single instance can be shared by all the editors on the same model: the model is then
+ * traversed row-wise, once per model event, distributing the values to each editor. The rows
+ * holding each distinct value are counted, so that options are added and removed as the rows
+ * are inserted, updated or deleted.<br>
+ * The extraction can be performed on a background thread, posting the changes in the options to
+ * the event dispatch thread. Note that the table model is then accessed from the background
+ * thread, and must support it.
+ */
+public class AutoOptionsExtractor implements TableModelListener {
+
+	/** Maximum number of rows read on the caller's thread per model event, in background */
+	private static final int MAX_EVENT_ROWS = 1024;
+
+	/** Executor shared by all instances to extract options in background, created on demand */
+	private static ExecutorService backgroundExecutor;
+
+	private TableModel tableModel;
+	private boolean background;
+	/** The attached editors, handled on the caller's thread */
+	private Map<FilterEditor, Column> editors = new HashMap<FilterEditor, Column>();
+	/** The columns being extracted, handled on the extraction thread */
+	private List<Column> columns = new ArrayList<Column>();
+	/** Whether the extraction of the pending columns is already scheduled */
+	private boolean extractionScheduled;
+	/** Number of model events received, identifying the model's content */
+	private volatile int modelVersion;
+
+	/** 
+	 * Creates an extractor for the given model, performing the extraction on a background
+	 * thread if specified, or on the thread sending the model events otherwise. 
+	 */
+	public AutoOptionsExtractor(TableModel tableModel, boolean background) {
+		this.tableModel = tableModel;
+		this.background = background;
+	}
+
+	/** Returns the associated table model */
+	public TableModel getTableModel() {
+		return tableModel;
+	}
+
+	/** Returns true if the extraction is performed on a background thread */
+	public boolean isBackground() {
+		return background;
+	}
+
+	/** 
+	 * Attaches an editor, whose options are extracted from the column given by its filter 
+	 * position. The extraction is delayed, when invoked from the event dispatch thread, to 
+	 * extract at once the options of all the editors attached together.
+	 */
+	public void attach(FilterEditor editor) {
+		if (editors.isEmpty()) {
+			tableModel.addTableModelListener(this);
+		}
+		final Column column = new Column(editor, editor.getFilterPosition(), 
+				editor.getMaxAutoOptions(), editor.isAutoOptionsSampling());
+		Column previous = editors.put(editor, column);
+		if (previous != null) {
+			previous.attached = false;
+		}
+		execute(new Runnable() {
+			public void run() {
+				columns.add(column);
+				scheduleExtraction();
+			}
+		});
+	}
+
+	/** Detaches the editor, whose options are not updated anymore */
+	public void detach(FilterEditor editor) {
+		Column column = editors.remove(editor);
+		if (column != null) {
+			column.attached = false;
+			if (editors.isEmpty()) {
+				tableModel.removeTableModelListener(this);
+			}
+		}
+	}
+
+	/** 
+	 * {@link TableModelListener} interface.<br>
+	 * On background extractions, the values of the inserted or updated rows are read here, as
+	 * the model could change again before the event is handled.
+	 */
+	public void tableChanged(TableModelEvent e) {
+		final int type = e.getType();
+		final int firstRow = e.getFirstRow();
+		final int lastRow = e.getLastRow();
+		final int column = e.getColumn();
+		final int version = ++modelVersion;
+		final int rows = tableModel.getRowCount();
+		final int[] positions;
+		final Object[][] values;
+		if (background && firstRow != TableModelEvent.HEADER_ROW 
+				&& type != TableModelEvent.DELETE) {
+			positions = getAttachedPositions();
+			values = readValues(firstRow, Math.min(rows - 1, lastRow), positions);
+		} else {
+			positions = null;
+			values = null;
+		}
+		execute(new Runnable() {
+			public void run() {
+				handleEvent(version, type, firstRow, lastRow, column, rows, positions, values);
+			}
+		});
+	}
+
+	/** Returns the model columns of the attached editors */
+	private int[] getAttachedPositions() {
+		int[] ret = new int[editors.size()];
+		int i = 0;
+		for (Column each : editors.values()) {
+			ret[i++] = each.position;
+		}
+		return ret;
+	}
+
+	/** 
+	 * Reads the values of the given rows on the given model columns, or returns null if there
+	 * are too many rows to read them on the caller's thread 
+	 */
+	private Object[][] readValues(int firstRow, int lastRow, int[] positions) {
+		if (lastRow - firstRow >= MAX_EVENT_ROWS) {
+			return null;
+		}
+		Object[][] ret = new Object[Math.max(0, lastRow - firstRow + 1)][];
+		for (int row = firstRow; row <= lastRow; row++) {
+			Object[] rowValues = new Object[positions.length];
+			for (int i = 0; i < positions.length; i++) {
+				rowValues[i] = tableModel.getValueAt(row, positions[i]);
+			}
+			ret[row - firstRow] = rowValues;
+		}
+		return ret;
+	}
+
+	/** 
+	 * Handles a model event, on the extraction thread. If given, the values of the inserted or
+	 * updated rows on the given model columns were read when the event was received.
+	 */
+	void handleEvent(int version, int type, int firstRow, int lastRow, int column, int rows,
+			int[] positions, Object[][] values) {
+		purgeColumns();
+		if (firstRow == TableModelEvent.HEADER_ROW) {
+			for (Column each : columns) {
+				each.pending = true;
+			}
+			scheduleExtraction();
+			return;
+		}
+		List<Column> updated = new ArrayList<Column>(columns.size());
+		boolean extract = false;
+		for (Column each : columns) {
+			if (each.pending) {
+				extract = true;
+			} else if (version > each.version && (type != TableModelEvent.UPDATE
+					|| column == TableModelEvent.ALL_COLUMNS || column == each.position)) {
+				// insertions and deletions affect to all the columns; events received before
+				// the extraction of the column are already reflected on its values
+				updated.add(each);
+			}
+		}
+		if (!updated.isEmpty()) {
+			extract |= updateColumns(updated, version, type, firstRow, lastRow, rows, 
+					positions, values);
+		}
+		if (extract) {
+			scheduleExtraction();
+		}
+	}
+
+	/** 
+	 * Updates the given columns after a model event, returning true if any column does not
+	 * match anymore the model, and must be extracted again.<br>
+	 * The values of the rows are taken from the given ones, if read when the event was
+	 * received; otherwise, they are read from the model, unless it has changed since.
+	 */
+	private boolean updateColumns(List<Column> updated, int version, int type, int firstRow, 
+			int lastRow, int rows, int[] positions, Object[][] values) {
+		boolean ret = false;
+		if (type == TableModelEvent.DELETE) {
+			for (Column each : updated) {
+				each.delete(firstRow, lastRow);
+			}
+		} else if (values == null && version != modelVersion) {
+			// the values of the rows have not been read, and could have changed since
+			for (Column each : updated) {
+				each.pending = true;
+			}
+			return true;
+		} else {
+			lastRow = Math.min(rows - 1, lastRow);
+			int[] indexes = new int[updated.size()];
+			for (int i = 0; i < indexes.length; i++) {
+				indexes[i] = getIndex(positions, updated.get(i).position);
+			}
+			for (int row = firstRow; row <= lastRow; row++) {
+				for (int i = 0; i < indexes.length; i++) {
+					Column each = updated.get(i);
+					Object value;
+					if (values == null) {
+						value = tableModel.getValueAt(row, each.position);
+					} else if (indexes[i] >= 0) {
+						value = values[row - firstRow][indexes[i]];
+					} else {
+						// the editor was attached after the event was received
+						each.pending = true;
+						continue;
+					}
+					if (type == TableModelEvent.INSERT) {
+						each.insert(row, value);
+					} else {
+						each.update(row, value);
+					}
+				}
+			}
+			if (values == null && version != modelVersion) {
+				// the model changed while being read
+				for (Column each : updated) {
+					each.pending = true;
+				}
+			}
+		}
+		for (Column each : updated) {
+			if (each.pending) {
+				ret = true;
+			} else if (each.overflow || each.values.size() == rows) {
+				each.notifyChanges(false);
+			} else {
+				// the event does not match the model's content (all data changed?)
+				each.pending = true;
+				ret = true;
+			}
+		}
+		return ret;
+	}
+
+	/** Returns the index of the given model column in the positions, or -1 if missing */
+	private static int getIndex(int[] positions, int position) {
+		if (positions != null) {
+			for (int i = 0; i < positions.length; i++) {
+				if (positions[i] == position) {
+					return i;
+				}
+			}
+		}
+		return -1;
+	}
+
+	/** Extracts the options of the pending columns, traversing once the model */
+	void extractPending() {
+		extractionScheduled = false;
+		purgeColumns();
+		List<Column> pending = new ArrayList<Column>(columns.size());
+		for (Column each : columns) {
+			if (each.pending) {
+				each.clear();
+				pending.add(each);
+			}
+		}
+		if (!pending.isEmpty()) {
+			int version = modelVersion;
+			int rows = tableModel.getRowCount();
+			for (int row = 0; row < rows; row++) {
+				for (Column each : pending) {
+					each.insert(row, tableModel.getValueAt(row, each.position));
+				}
+			}
+			for (Column each : pending) {
+				each.pending = false;
+				each.version = version;
+				each.notifyChanges(true);
+			}
+		}
+	}
+
+	/** Schedules the extraction of the pending columns, unless already scheduled */
+	private void scheduleExtraction() {
+		if (!extractionScheduled) {
+			extractionScheduled = true;
+			Runnable extraction = new Runnable() {
+				public void run() {
+					extractPending();
+				}
+			};
+			if (background) {
+				execute(extraction);
+			} else if (SwingUtilities.isEventDispatchThread()) {
+				// better wait until all the pending events have been handled
+				SwingUtilities.invokeLater(extraction);
+			} else {
+				extraction.run();
+			}
+		}
+	}
+
+	/** Removes the columns whose editors are not attached anymore */
+	private void purgeColumns() {
+		for (Iterator<Column> it = columns.iterator(); it.hasNext();) {
+			if (!it.next().attached) {
+				it.remove();
+			}
+		}
+	}
+
+	/** Executes the given task on the extraction thread */
+	private void execute(final Runnable task) {
+		if (background) {
+			getBackgroundExecutor().execute(new Runnable() {
+				public void run() {
+					try {
+						task.run();
+					} catch (RuntimeException ex) {
+						// the model has been modified while being read: the options are 
+						// extracted again on the next model event
+						for (Column each : columns) {
+							each.pending = true;
+						}
+					}
+				}
+			});
+		} else {
+			task.run();
+		}
+	}
+
+	/** Executes the given task, that updates the editors, on the event dispatch thread */
+	void post(Runnable task) {
+		if (background) {
+			SwingUtilities.invokeLater(task);
+		} else {
+			task.run();
+		}
+	}
+
+	/**
+	 * Returns the executor used on background extractions, creating it if needed
+	 */
+	private static synchronized ExecutorService getBackgroundExecutor() {
+		if (backgroundExecutor == null) {
+			backgroundExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread ret = new Thread(r, "AutoOptionsExtractor");
+					ret.setDaemon(true);
+					return ret;
+				}
+			});
+		}
+		return backgroundExecutor;
+	}
+
+	/**
+	 * Options of a single editor: the rows holding each distinct value are counted, and the
+	 * value of each row is kept as well, as the model does not provide the values of the
+	 * deleted or updated rows. Each row keeps only an identifier of its value, in one or two
+	 * bytes while the column holds less than 256 or 65536 distinct values.<br>
+	 * If the editor limits the number of options, and the column holds more distinct values,
+	 * the column overflows: the values of the rows are discarded, and the counts are either
+	 * discarded, or kept only for the most frequent values, using a Misra-Gries summary. 
+	 * Deletions are then ignored, and updates only count the new values.
+	 */
+	final class Column {
+		final FilterEditor editor;
+		final int position;
+		/** Maximum number of options, or zero if not limited */
+		final int maxOptions;
+		/** Whether to keep the most frequent values, after overflowing */
+		final boolean sampling;
+		/** Whether the column holds more than maxOptions distinct values */
+		boolean overflow;
+		/** Set to false, on the caller's thread, when the editor is detached */
+		volatile boolean attached = true;
+		/** Whether the options must be extracted from scratch */
+		boolean pending = true;
+		/** Model version when the options were extracted */
+		int version;
+		/** 
+		 * Number of rows holding each distinct (non null) value, followed by the identifier of 
+		 * the value, if not overflowed 
+		 */
+		Map<Object, int[]> counts = new HashMap<Object, int[]>();
+		/** Identifier of the value of each row, as last read from the model */
+		RowValues values = new RowValues();
+		/** Value of each identifier, null if free; the identifier 0 is the null value */
+		List<Object> identified = new ArrayList<Object>();
+		/** Identifiers released, to be reused */
+		List<Integer> released = new ArrayList<Integer>();
+		/** 
+		 * Values counted / not counted anymore, pending to be notified; values not counted 
+		 * anymore are only registered if already notified, to keep these sets bounded
+		 */
+		Set<Object> added = new LinkedHashSet<Object>();
+		Set<Object> removed = new LinkedHashSet<Object>();
+
+		Column(FilterEditor editor, int position, int maxOptions, boolean sampling) {
+			this.editor = editor;
+			this.position = position;
+			this.maxOptions = Math.max(0, maxOptions);
+			this.sampling = sampling;
+			identified.add(null);
+		}
+
+		void clear() {
+			overflow = false;
+			counts.clear();
+			values = new RowValues();
+			identified.clear();
+			identified.add(null);
+			released.clear();
+			added.clear();
+			removed.clear();
+		}
+
+		void insert(int row, Object value) {
+			if (overflow) {
+				sample(value);
+			} else if (row <= values.size()) {
+				int id = count(value, 1);
+				if (!overflow) {
+					values.insert(row, id);
+				}
+			}
+		}
+
+		void delete(int firstRow, int lastRow) {
+			if (overflow) {
+				return;
+			}
+			lastRow = Math.min(values.size() - 1, lastRow);
+			if (firstRow <= lastRow) {
+				for (int row = firstRow; row <= lastRow; row++) {
+					count(identified.get(values.get(row)), -1);
+				}
+				values.remove(firstRow, lastRow + 1);
+			}
+		}
+
+		void update(int row, Object value) {
+			if (overflow) {
+				sample(value);
+			} else if (row < values.size()) {
+				Object old = identified.get(values.get(row));
+				if (value == null? old != null : !value.equals(old)) {
+					count(old, -1);
+					int id = count(value, 1);
+					if (!overflow) {
+						values.set(row, id);
+					}
+				}
+			}
+		}
+
+		/** 
+		 * Updates the number of rows holding the given value, returning its identifier, 
+		 * meaningless if the column overflows 
+		 */
+		private int count(Object value, int delta) {
+			if (value == null) {
+				return 0;
+			}
+			int[] count = counts.get(value);
+			if (count == null) {
+				int id;
+				if (released.isEmpty()) {
+					id = identified.size();
+					identified.add(value);
+				} else {
+					id = released.remove(released.size() - 1);
+					identified.set(id, value);
+				}
+				counts.put(value, new int[]{delta, id});
+				added.add(value);
+				if (maxOptions > 0 && counts.size() > maxOptions) {
+					overflow();
+				}
+				return id;
+			}
+			if ((count[0] += delta) == 0) {
+				counts.remove(value);
+				identified.set(count[1], null);
+				released.add(count[1]);
+				forget(value);
+			}
+			return count[1];
+		}
+
+		/** 
+		 * Switches to overflow mode, discarding the values of the rows, and all the counts but
+		 * those of the most frequent values, if sampling 
+		 */
+		private void overflow() {
+			overflow = true;
+			values = new RowValues();
+			identified = new ArrayList<Object>();
+			released = new ArrayList<Integer>();
+			if (sampling) {
+				List<Map.Entry<Object, int[]>> entries = 
+					new ArrayList<Map.Entry<Object, int[]>>(counts.entrySet());
+				Collections.sort(entries, new Comparator<Map.Entry<Object, int[]>>() {
+					public int compare(Map.Entry<Object, int[]> o1, Map.Entry<Object, int[]> o2) {
+						int c1 = o1.getValue()[0];
+						int c2 = o2.getValue()[0];
+						return c1 > c2? -1 : (c1 == c2? 0 : 1);
+					}
+				});
+				for (Map.Entry<Object, int[]> each : entries.subList(maxOptions, entries.size())) {
+					counts.remove(each.getKey());
+					forget(each.getKey());
+				}
+			} else {
+				for (Object each : counts.keySet()) {
+					forget(each);
+				}
+				counts.clear();
+			}
+		}
+
+		/** Registers that the value is not counted anymore */
+		private void forget(Object value) {
+			if (!added.remove(value)) {
+				removed.add(value);
+			}
+		}
+
+		/**
+		 * Counts the value in overflow mode, if sampling: new values are monitored while there
+		 * are less than maxOptions; otherwise, all the counts are decremented, dropping those
+		 * reaching zero (Misra-Gries summary). Any value found in more than 1/(maxOptions+1) of
+		 * the counted rows is kept.
+		 */
+		private void sample(Object value) {
+			if (sampling && value != null) {
+				int[] count = counts.get(value);
+				if (count != null) {
+					++count[0];
+				} else if (counts.size() < maxOptions) {
+					counts.put(value, new int[]{1});
+					added.add(value);
+				} else {
+					for (Iterator<Map.Entry<Object, int[]>> it = counts.entrySet().iterator(); it.hasNext();) {
+						Map.Entry<Object, int[]> each = it.next();
+						if (--each.getValue()[0] == 0) {
+							it.remove();
+							forget(each.getKey());
+						}
+					}
+				}
+			}
+		}
+
+		/** 
+		 * Posts the options appearing / disappearing to the editor, clearing first its current
+		 * options if specified
+		 */
+		void notifyChanges(final boolean clear) {
+			final List<Object> appeared = new ArrayList<Object>();
+			for (Object value : added) {
+				if (counts.containsKey(value)) {
+					appeared.add(value);
+				}
+			}
+			final List<Object> disappeared = new ArrayList<Object>();
+			for (Object value : removed) {
+				if (!counts.containsKey(value)) {
+					disappeared.add(value);
+				}
+			}
+			added.clear();
+			removed.clear();
+			if (clear || !appeared.isEmpty() || !disappeared.isEmpty()) {
+				post(new Runnable() {
+					public void run() {
+						if (attached) {
+							if (clear) {
+								editor.clearOptions();
+							}
+							if (!disappeared.isEmpty()) {
+								editor.removeOptions(disappeared);
+							}
+							if (!appeared.isEmpty()) {
+								editor.addOptions(appeared);
+							}
+						}
+					}
+				});
+			}
+		}
+	}
+
+	/**
+	 * Identifiers of the values of consecutive rows, stored in the narrowest array able to hold
+	 * every identifier set so far: bytes, chars (unsigned shorts) or ints.
+	 */
+	static final class RowValues {
+		private byte[] bytes = new byte[16];
+		private char[] chars;
+		private int[] ints;
+		private int size;
+
+		int size() {
+			return size;
+		}
+
+		int get(int row) {
+			if (bytes != null) {
+				return bytes[row] & 0xff;
+			}
+			return (chars != null)? chars[row] : ints[row];
+		}
+
+		void set(int row, int id) {
+			widen(id, capacity());
+			if (bytes != null) {
+				bytes[row] = (byte) id;
+			} else if (chars != null) {
+				chars[row] = (char) id;
+			} else {
+				ints[row] = id;
+			}
+		}
+
+		void insert(int row, int id) {
+			int capacity = capacity();
+			widen(id, (size < capacity)? capacity : capacity + (capacity >> 1) + 1);
+			Object array = (bytes != null)? bytes : (chars != null)? (Object) chars : ints;
+			System.arraycopy(array, row, array, row + 1, size - row);
+			size++;
+			set(row, id);
+		}
+
+		/** Removes the rows from -inclusive- to -exclusive- */
+		void remove(int from, int to) {
+			Object array = (bytes != null)? bytes : (chars != null)? (Object) chars : ints;
+			System.arraycopy(array, to, array, from, size - to);
+			size -= to - from;
+		}
+
+		private int capacity() {
+			if (bytes != null) {
+				return bytes.length;
+			}
+			return (chars != null)? chars.length : ints.length;
+		}
+
+		/** Ensures that the identifier can be stored, and the given capacity */
+		private void widen(int id, int capacity) {
+			if (id > Character.MAX_VALUE) {
+				if (ints == null || capacity > ints.length) {
+					int[] wider = new int[capacity];
+					for (int i = 0; i < size; i++) {
+						wider[i] = get(i);
+					}
+					bytes = null;
+					chars = null;
+					ints = wider;
+				}
+			} else if (ints != null) {
+				if (capacity > ints.length) {
+					int[] wider = new int[capacity];
+					System.arraycopy(ints, 0, wider, 0, size);
+					ints = wider;
+				}
+			} else if (id > 0xff || chars != null) {
+				if (chars == null || capacity > chars.length) {
+					char[] wider = new char[capacity];
+					for (int i = 0; i < size; i++) {
+						wider[i] = (char) get(i);
+					}
+					bytes = null;
+					chars = wider;
+				}
+			} else if (capacity > bytes.length) {
+				byte[] wider = new byte[capacity];
+				System.arraycopy(bytes, 0, wider, 0, size);
+				bytes = wider;
+			}
+		}
+	}
+}
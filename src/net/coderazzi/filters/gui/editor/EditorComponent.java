@@ -463,8 +463,7 @@ interface EditorComponent {
                 filter = new RowFilter() {
                         @Override
                         public boolean include(RowFilter.Entry entry) {
-                            Object val = entry.getValue(filterPosition);
-                            return (val == null) ? (cachedContent == null) : val.equals(cachedContent);
+                            return entry.isEqual(filterPosition, cachedContent);
                         }
                     };
             }
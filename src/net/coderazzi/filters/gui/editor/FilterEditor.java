@@ -45,9 +45,7 @@ import java.awt.event.MouseEvent;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.text.Format;
-import java.util.ArrayList;
 import java.util.Collection;
-import java.util.List;
 
 import javax.swing.AbstractAction;
 import javax.swing.Action;
@@ -56,15 +54,22 @@ import javax.swing.JComponent;
 import javax.swing.JTextField;
 import javax.swing.KeyStroke;
 import javax.swing.ListCellRenderer;
+import javax.swing.Timer;
 import javax.swing.border.Border;
-import javax.swing.event.TableModelEvent;
-import javax.swing.event.TableModelListener;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import javax.swing.table.TableModel;
+import javax.swing.text.JTextComponent;
 
 import net.coderazzi.filters.BaseFilter;
 import net.coderazzi.filters.IFilter;
+import net.coderazzi.filters.IFilterObserver;
 import net.coderazzi.filters.IFilterTextParser;
+import net.coderazzi.filters.TableFilter;
+import net.coderazzi.filters.artifacts.FilterProgram;
 import net.coderazzi.filters.artifacts.RowFilter;
+import net.coderazzi.filters.artifacts.RowSelection;
+import net.coderazzi.filters.gui.FilterSettings;
 
 /**
  * Custom component to handle the filter' editors<br>
@@ -79,7 +84,10 @@ import net.coderazzi.filters.artifacts.RowFilter;
 public class FilterEditor extends JComponent{
 
 	private static final long serialVersionUID = 6908400421021655278L;
-	private AutoOptionsHandler autoOptionsHandler;
+	private AutoOptionsExtractor autoOptionsExtractor;
+	private int maxAutoOptions = FilterSettings.maxAutoOptions;
+	private boolean autoOptionsSampling = FilterSettings.autoOptionsSampling;
+	private InstantFilteringHandler instantFilteringHandler = new InstantFilteringHandler();
 	private PropertyChangeListener textParserListener;
 	private EditorBorder border = new EditorBorder();
 	FilterArrowButton downButton = new FilterArrowButton();
@@ -152,6 +160,37 @@ public class FilterEditor extends JComponent{
 		return popup.getMaxHistory();
 	}
 	
+	/**
+	 * Enables instant filtering: the filter is updated while the user types, without 
+	 * waiting for the enter key or the focus to be lost.<br>
+	 * Keystrokes are coalesced, so that the filter is only updated once the user stops 
+	 * typing during the instant filtering delay
+	 * @see #setInstantFilteringDelay(int)
+	 */
+	public void setInstantFiltering(boolean enable) {
+		instantFilteringHandler.setEnabled(enable);
+	}
+
+	/** Returns true if the instant filtering is enabled */
+	public boolean isInstantFiltering() {
+		return instantFilteringHandler.isEnabled();
+	}
+
+	/**
+	 * Sets the idle time, in milliseconds, to wait after the last keystroke before 
+	 * updating the filter, when instant filtering is enabled.<br>
+	 * This delay is adapted to the duration of the last filtering: it is skipped if 
+	 * filtering is cheap, and extended if filtering takes longer than the delay itself
+	 */
+	public void setInstantFilteringDelay(int delay) {
+		instantFilteringHandler.delay = delay;
+	}
+
+	/** Returns the instant filtering delay, in milliseconds */
+	public int getInstantFilteringDelay() {
+		return instantFilteringHandler.delay;
+	}
+	
 	/** Returns the {@link IFilter} associated to the editor's content */
 	public IFilter getFilter() {
 		return filter;
@@ -244,6 +283,7 @@ public class FilterEditor extends JComponent{
 	
 	/** Diposes the editor, not to be used again */
 	public void detach() {
+		instantFilteringHandler.cancel();
 		unsetAutoOptions();
 	}
 	
@@ -260,9 +300,8 @@ public class FilterEditor extends JComponent{
 	 */
 	public void resetFilter() {
 		setEditorContent(EditorComponent.EMPTY_FILTER);
-		if (autoOptionsHandler!=null){
-			TableModel model = autoOptionsHandler.tableModel;
-			setAutoOptions(model);
+		if (autoOptionsExtractor!=null){
+			setAutoOptionsExtractor(autoOptionsExtractor);
 		} else if (getListCellRenderer()==null){
 			clearOptions();
 			setEditable(true);
@@ -326,6 +365,12 @@ public class FilterEditor extends JComponent{
 		downButton.setCanPopup(popup.hasContent());
 	}
 
+	/** Removes the given options from the current set */
+	public void removeOptions(Collection<?> options) {
+		popup.removeOptions(options);
+		downButton.setCanPopup(popup.hasContent());
+	}
+
 	/** Clears any options currently defined, including the current history */
 	public void clearOptions() {
 		popup.clear();
@@ -379,22 +424,78 @@ public class FilterEditor extends JComponent{
 	 * @param tableModel can be set to null unset the flag
 	 */
 	public void setAutoOptions(TableModel tableModel){
+		setAutoOptionsExtractor(tableModel==null? null : new AutoOptionsExtractor(tableModel, false));
+	}
+
+	/**
+	 * Sets autoOptions using the given {@link AutoOptionsExtractor}, which can be shared with 
+	 * other editors on the same {@link TableModel}, to extract together their options.
+	 * @param extractor can be set to null unset the flag
+	 */
+	public void setAutoOptionsExtractor(AutoOptionsExtractor extractor){
 		unsetAutoOptions();
-		if (tableModel!=null){
-			autoOptionsHandler=new AutoOptionsHandler(tableModel);
+		if (extractor!=null){
+			autoOptionsExtractor=extractor;
+			extractor.attach(this);
+		}
+	}
+
+	/** Returns the {@link AutoOptionsExtractor} used by the editor, if it has autoOptions */
+	public AutoOptionsExtractor getAutoOptionsExtractor(){
+		return autoOptionsExtractor;
+	}
+
+	/**
+	 * Sets the maximum number of options extracted with autoOptions. If the column holds more
+	 * distinct values, the options are removed, and the popup menu shows only the history; 
+	 * with sampling, the options are instead the values most frequently found. Until then,
+	 * the value of each row is kept, to handle the deletions and updates in the model; once the
+	 * column overflows, the memory used to extract the options no longer depends on the number
+	 * of rows.
+	 * @param max zero or negative for no limit, the default
+	 * @see #setAutoOptionsSampling(boolean)
+	 */
+	public void setMaxAutoOptions(int max){
+		maxAutoOptions=max;
+		if (autoOptionsExtractor!=null){
+			setAutoOptionsExtractor(autoOptionsExtractor);
+		}
+	}
+
+	/** Returns the maximum number of options extracted with autoOptions */
+	public int getMaxAutoOptions(){
+		return maxAutoOptions;
+	}
+
+	/**
+	 * Sets whether to show the most frequent values, if the column holds more distinct values
+	 * than the maximum number of options extracted with autoOptions. The frequencies are 
+	 * approximated, and not updated on deletions: any value found in more than 1/(max+1) of
+	 * the rows is shown.
+	 * @see #setMaxAutoOptions(int)
+	 */
+	public void setAutoOptionsSampling(boolean set){
+		autoOptionsSampling=set;
+		if (autoOptionsExtractor!=null){
+			setAutoOptionsExtractor(autoOptionsExtractor);
 		}
 	}
 
+	/** Returns true if the most frequent values are shown, on exceeding the auto options' max */
+	public boolean isAutoOptionsSampling(){
+		return autoOptionsSampling;
+	}
+
 	/** Returns true if the editor is using autoOptions */
 	public boolean isAutoOptions(){
-		return autoOptionsHandler!=null;
+		return autoOptionsExtractor!=null;
 	}
 	
 	/** Unsets the autoOptions flag */
 	public void unsetAutoOptions(){
-		if (autoOptionsHandler!=null){
-			autoOptionsHandler.detach();
-			autoOptionsHandler=null;
+		if (autoOptionsExtractor!=null){
+			autoOptionsExtractor.detach(this);
+			autoOptionsExtractor=null;
 		}
 	}
 	
@@ -453,6 +554,9 @@ public class FilterEditor extends JComponent{
 			}
 		});
 
+		if (component instanceof JTextComponent){
+			((JTextComponent)component).getDocument().addDocumentListener(instantFilteringHandler);
+		}
 		component.setBorder(null);
 		component.setFocusable(true);
 		component.setEnabled(isEnabled());
@@ -866,7 +970,31 @@ public class FilterEditor extends JComponent{
     	public boolean include(RowFilter.Entry entry) {
     		return delegateFilter==null? true : delegateFilter.include(entry);
     	}
+    	@Override
+    	public void include(RowFilter.Rows rows, RowSelection candidates, RowSelection result) {
+    		//the delegate can evaluate all the rows at once more efficiently
+    		RowFilter delegate = delegateFilter;
+    		if (delegate==null){
+    			super.include(rows, candidates, result);
+    		} else {
+    			delegate.include(rows, candidates, result);
+    		}
+    	}
+    	@Override
+    	public boolean includesAll() {
+    		//the editor has no content
+    		return delegateFilter==null;
+    	}
+    	@Override
+    	public void compile(FilterProgram program) {
+    		//an editor without filter includes all the rows, adding no instructions
+    		RowFilter delegate = delegateFilter;
+    		if (delegate!=null){
+    			delegate.compile(program);
+    		}
+    	}
     	public void checkChanges(){
+    		instantFilteringHandler.cancel();
     		if (isEnabled()){
 	    		checkChanges(false);
 	    		Object content = editor.getContent();
@@ -877,6 +1005,7 @@ public class FilterEditor extends JComponent{
     		}
     	}
     	public void update(){
+    		instantFilteringHandler.cancel();
     		if (isEnabled()){
         		checkChanges(true);    			
     		} else {
@@ -884,11 +1013,22 @@ public class FilterEditor extends JComponent{
     			reportFilterUpdatedToObservers();    			
     		}
     	}
-    	private void checkChanges(boolean forceUpdate){
-    		if (editor.checkFilterUpdate(forceUpdate)){
-    			delegateFilter = editor.getFilter();
-    			reportFilterUpdatedToObservers();
+    	/** Updates the filter without adding the content to the history, returns true if updated */
+    	boolean checkInstantChanges(){
+    		return isEnabled() && checkChanges(false);
+    	}
+    	private boolean checkChanges(boolean forceUpdate){
+    		if (!editor.checkFilterUpdate(forceUpdate)){
+    			return false;
     		}
+			RowFilter previous = delegateFilter;
+			delegateFilter = editor.getFilter();
+			if (delegateFilter!=null && (previous==null || delegateFilter.isNarrowerThan(previous))){
+				reportFilterNarrowedToObservers();
+			} else {
+				reportFilterUpdatedToObservers();
+			}
+			return true;
     	}
     }
 
@@ -921,49 +1061,81 @@ public class FilterEditor extends JComponent{
 	}
 
 	/**
-	 * Class to automatically extract the content from the table model, used when
-	 * the filter editor is defined with autoOptions flag.
+	 * Class to update the filter while the user types, when instant filtering is enabled.<br>
+	 * Each edition restarts a timer, so that a burst of keystrokes produces a single filter 
+	 * update. The waiting time depends on the duration of the last update: cheap filters are
+	 * applied immediately, expensive ones wait at least as long as the previous filtering took.
 	 */
-	final class AutoOptionsHandler implements TableModelListener{
-		TableModel tableModel;
-		public AutoOptionsHandler(TableModel tableModel) {
-			this.tableModel=tableModel;
-			extractFilterContentsFromModel();
-			tableModel.addTableModelListener(this);
+	final class InstantFilteringHandler implements DocumentListener, ActionListener{
+		/** Filters below this fraction of the delay are considered cheap, and applied at once */
+		private final static int CHEAP_FILTER_RATIO = 10;
+		int delay = FilterSettings.instantFilteringDelay;
+		private boolean enabled = FilterSettings.instantFiltering;
+		private Timer timer = new Timer(0, this);
+		
+		public InstantFilteringHandler() {
+			timer.setRepeats(false);
+		}
+		
+		public void setEnabled(boolean enable){
+			enabled=enable;
+			if (!enable){
+				cancel();
+			}
+		}
+		
+		public boolean isEnabled(){
+			return enabled;
+		}
+		
+		/** Discards any pending update, usually because the filter is updated directly */
+		public void cancel(){
+			timer.stop();
 		}
 		
-		public void detach(){
-			tableModel.removeTableModelListener(this);			
+		/** {@link DocumentListener}: method called when the editor's content changes */
+		public void insertUpdate(DocumentEvent e) {
+			schedule();
+		}
+
+		/** {@link DocumentListener}: method called when the editor's content changes */
+		public void removeUpdate(DocumentEvent e) {
+			schedule();
+		}
+
+		/** {@link DocumentListener}: method called when the editor's content changes */
+		public void changedUpdate(DocumentEvent e) {
+			// attribute changes do not modify the filter
+		}
+
+		/** {@link ActionListener}: method called when the timer expires */
+		public void actionPerformed(ActionEvent e) {
+			filter.checkInstantChanges();
 		}
 		
-		public void tableChanged(TableModelEvent e) {
-			int r = e.getFirstRow();			
-			if (r == TableModelEvent.HEADER_ROW){				
-				extractFilterContentsFromModel();
-			} else if (e.getType()!=TableModelEvent.DELETE){				
-				int c = e.getColumn(); 				
-				if (c == TableModelEvent.ALL_COLUMNS || c == getFilterPosition()){					
-					extendFilterContentsFromModel(r, e.getLastRow());
+		/** 
+		 * Returns the duration, in milliseconds, of the last filter update, as reported by the 
+		 * table filters observing this editor: it covers the whole pass, until its result is 
+		 * installed, also if the table is filtered in background 
+		 */
+		private long getLastDuration(){
+			long ret = 0;
+			for (IFilterObserver observer : filter.getFilterObservers()){
+				if (observer instanceof TableFilter){
+					ret = Math.max(ret, ((TableFilter) observer).getLastFilterDuration());
 				}
 			}
+			return ret;
 		}
 		
-	    private void extractFilterContentsFromModel() {
-	    	clearOptions();
-	    	extendFilterContentsFromModel(0, tableModel.getRowCount()-1);
-	    }
-	    
-	    private void extendFilterContentsFromModel(int firstRow, int lastRow){
-	    	List<Object> all = new ArrayList<Object>();
-            int column = getFilterPosition();
-
-            lastRow = Math.min(tableModel.getRowCount() - 1, lastRow);
-
-            while (lastRow >= firstRow) {
-                all.add(tableModel.getValueAt(firstRow++, column));
-            }
-            addOptions(all);
-	    }
-	    
+		private void schedule(){
+			if (enabled && FilterEditor.this.isEnabled()){
+				long lastDuration = getLastDuration();
+				long wait = lastDuration * CHEAP_FILTER_RATIO < delay? 0 : Math.max(delay, lastDuration);
+				//the timer is used even without delay, to coalesce the changes of a single edition
+				timer.setInitialDelay((int) Math.min(wait, Integer.MAX_VALUE));
+				timer.restart();
+			}
+		}
 	}
 }
\ No newline at end of file
@@ -42,8 +42,8 @@ import net.coderazzi.filters.gui.FilterSettings;
 class HistoryListModel extends AbstractListModel {
 	private static final long serialVersionUID = -374115548677017807L;
 	private List<Object> history = new ArrayList<Object>();
-	/** history, converted to lower case. Will be null if content is not text-based */
-	private List<Object> historyLC;
+	/** Prefix index on the history, created on demand; null if obsolete */
+	private PrefixIndex prefixIndex;
 	private int maxHistory = FilterSettings.maxVisiblePopupRows;
 	private boolean stringContent = true;
 	private boolean ignoreCase;
@@ -54,6 +54,7 @@ class HistoryListModel extends AbstractListModel {
 	 */
 	public void setIgnoreCase(boolean set){
 		ignoreCase = set;
+		prefixIndex = null;
 	}
 	
 	/**
@@ -87,7 +88,7 @@ class HistoryListModel extends AbstractListModel {
 				ret=true;
 				fireIntervalAdded(this, 0, 0);
 			}
-			historyLC=null;
+			prefixIndex=null;
 		}
 		return ret;
 	}
@@ -101,7 +102,7 @@ class HistoryListModel extends AbstractListModel {
 		if (size>0){
 			history.clear();
 			fireIntervalRemoved(this, 0, size);
-			historyLC=null;
+			prefixIndex=null;
 		}
 	}
 
@@ -118,7 +119,7 @@ class HistoryListModel extends AbstractListModel {
 				history.remove(i);
 			}
 			fireContentsChanged(this, maxHistory, current);
-			historyLC=null;
+			prefixIndex=null;
 			return true;
 		}
 		return false;
@@ -131,59 +132,11 @@ class HistoryListModel extends AbstractListModel {
 	/** @see PopupComponent#selectBestMatch(Object, boolean) */
 	public PopupComponent.Match getClosestMatch(Object hint, boolean exact) {
 		if (stringContent && (hint instanceof String)) {
-			List list = history;
-			if (ignoreCase){
-				if (historyLC==null){
-					historyLC = new ArrayList<Object>(history.size()+1);
-					for(Object o : history){
-						if (o instanceof String){
-							o = ((String)o).toLowerCase();
-						}
-						historyLC.add(o);
-					}
-				}
-				list = historyLC;
-				hint = ((String) hint).toLowerCase();
+			if (prefixIndex == null) {
+				prefixIndex = new PrefixIndex(history, ignoreCase);
 			}
-			return findOnUnsortedContent(list, (String)hint, exact);
+			return prefixIndex.getMatch((String) hint, exact, true);
 		}
 		return new PopupComponent.Match(history.indexOf(hint));
 	}
-	
-	/** Method to find the best match on a given unsorted list -search is case sensitive- */
-	private PopupComponent.Match findOnUnsortedContent(List list, String strStart, boolean fullMatch) {
-		PopupComponent.Match ret = new PopupComponent.Match();
-		if (list.isEmpty()) {
-			ret.index = -1;
-		} else {
-			ret.len = strStart.length();
-			ret.index = list.indexOf(strStart);
-			if (ret.index != -1) {
-				ret.exact=true;
-			} else {
-				ret.index = 0;
-				ret.exact = ret.len == 0;
-				int originalLen = ret.len;
-				while (ret.len > 0) {
-					for (Object o : list) {
-						if (o instanceof String){
-							String os = (String) o;
-							if (os.startsWith(strStart)) {
-								ret.exact = os.length() == originalLen;
-								return ret;
-							}
-						}
-						++ret.index;
-					}
-					if (fullMatch) {
-						ret.index = -1;
-						break;
-					}
-					ret.index = 0;
-					strStart = strStart.substring(0, --ret.len);
-				}
-			}
-		}
-		return ret;
-	}
 }
@@ -29,7 +29,12 @@ import java.text.Format;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import javax.swing.AbstractListModel;
 import javax.swing.ListCellRenderer;
@@ -38,18 +43,30 @@ import javax.swing.ListCellRenderer;
  * List model to handle the options in the popup menu.<br>
  * When the user specifies a {@link ListCellRenderer}, options are considered non-text.
  * Otherwise, content is converted, if needed, to Strings, and sorted. This is needed
- * to always show the popup's matches in sequential order. 
+ * to always show the popup's matches in sequential order.<br>
+ * Duplicates are discarded using hash sets, and added Strings are sorted once and merged
+ * with the existing ones, so that adding many options at once is not quadratic.
  */
 class OptionsListModel extends AbstractListModel {
 
 	private static final long serialVersionUID = 3523952153693100563L;
-	private List content;
+	/** Strings are merged, instead of inserted one by one, if adding more than 1/MERGE_RATIO */
+	private static final int MERGE_RATIO = 16;
+	private List<Object> content;
+	/** The objects in the content's list, to discard duplicates */
+	private Set<Object> contentSet;
 	/** 
 	 * content, converted to Strings. If the content's list is already Strins, stringContent
 	 * merely references the content's list (i.e., stringContent = content).<br>
 	 * This list is null if the content is considered non-text 
 	 */
-	private List stringContent;
+	private List<Object> stringContent;
+	/** The Strings in stringContent; it references contentSet if both lists are the same */
+	private Set<Object> stringSet;
+	/** Position of each object in the content's list, created on demand; null if obsolete */
+	private Map<Object, Integer> contentPositions;
+	/** Prefix index on stringContent, created on demand; null if obsolete */
+	private PrefixIndex prefixIndex;
 	private Format formatter = defaultFormatter;
 	private boolean ignoreCase;
 	
@@ -69,8 +86,10 @@ class OptionsListModel extends AbstractListModel {
 	};
 
 	public OptionsListModel() {
-		this.content = new ArrayList();
+		this.content = new ArrayList<Object>();
+		this.contentSet = new HashSet<Object>();
 		this.stringContent = content;
+		this.stringSet = contentSet;
 	}
 
 	/** 
@@ -79,6 +98,7 @@ class OptionsListModel extends AbstractListModel {
 	 */
 	public void setIgnoreCase(boolean set){
 		ignoreCase = set;
+		prefixIndex = null;
 	}
 	
 	public int getSize() {
@@ -97,12 +117,12 @@ class OptionsListModel extends AbstractListModel {
 		if (set == false) {
 			if (stringContent != null) {
 				stringContent = null;
+				stringSet = null;
 				fireContentsChanged(this, 0, getSize());
 			}
 		} else if (stringContent == null) {
-			List oldContent = content;
-			content = new ArrayList();
-			stringContent = content;
+			List<Object> oldContent = content;
+			resetContent(true);
 			addContent(oldContent);
 		}
 	}
@@ -111,48 +131,62 @@ class OptionsListModel extends AbstractListModel {
 	public void setFormat(Format format) {
 		this.formatter = format==null? defaultFormatter : format;
 		if (stringContent != null) {
-			List oldContent = content;
-			List oldStringContent = stringContent;
-			content = new ArrayList();
-			if (oldContent == oldStringContent) {
-				stringContent = content;
-			} else {
-				stringContent = new ArrayList();
-			}
+			List<Object> oldContent = content;
+			resetContent(oldContent == stringContent);
 			addContent(oldContent);
 		}
 	}
 	
 	/** Returns true if the object is a valid option (as object, or string) */
 	public boolean isValidOption(Object o){
-		return (content.contains(o)) || 
+		return (contentSet.contains(o)) || 
 					(stringContent!=null && 
 							stringContent!=content && 
 							(o instanceof String) && 
-							stringContent.contains(o));
+							stringSet.contains(o));
 	}
 	
 	/** Commodity method to format objects using the current {@link Format} */
 	public String format(Object o){
-		return (o instanceof String)? (String)o : formatter.format(o);
+		return (o instanceof String)? (String)o : formatOption(o);
+	}
+
+	/** 
+	 * Formats the option. The format is shared with the filter parser, and can be used 
+	 * meanwhile by filters evaluated on other threads: formats are not thread safe
+	 */
+	private String formatOption(Object o){
+		synchronized (formatter) {
+			return formatter.format(o);
+		}
 	}
 
 	/** @see PopupComponent#selectBestMatch(Object, boolean) */
 	public PopupComponent.Match getClosestMatch(Object hint, boolean exact) {
 		if (stringContent == null) {
-			return new PopupComponent.Match(content.indexOf(hint));
+			if (contentPositions == null) {
+				contentPositions = new HashMap<Object, Integer>();
+				for (int i = content.size() - 1; i >= 0; i--) {
+					contentPositions.put(content.get(i), Integer.valueOf(i));
+				}
+			}
+			Integer position = contentPositions.get(hint);
+			return new PopupComponent.Match(position == null ? -1 : position.intValue());
+		}
+		if (!(hint instanceof String)) {
+			return null;
+		}
+		if (prefixIndex == null) {
+			prefixIndex = new PrefixIndex(stringContent, ignoreCase);
 		}
-		return (hint instanceof String)? findOnSortedContent((String)hint, exact) : null;
+		return prefixIndex.getMatch((String) hint, exact, false);
 	}
 
 	public void clearContent() {
 		int size = getSize();
 		if (size > 0) {
-			content.clear();
-			if (stringContent!=null){
-				stringContent=content;
-			}
-			fireIntervalRemoved(this, 0, size);
+			resetContent(stringContent != null);
+			fireIntervalRemoved(this, 0, size - 1);
 		}
 	}
 	
@@ -163,13 +197,18 @@ class OptionsListModel extends AbstractListModel {
 	/** 
 	 * Adds additional options. If the content is text-based, the options are converted into
 	 * Strings, and sorted. Otherwise, no sorting is performed, although duplicates are still
-	 * discarded
+	 * discarded.<br>
+	 * A single change event is sent, if any option is added.
 	 */
-	public void addContent(Collection addedContent) {
+	public void addContent(Collection<?> addedContent) {
 		if (!addedContent.isEmpty()){
+			int size = getSize();
+			contentPositions = null;
+			prefixIndex = null;
 			if (isEmpty()){
 				//it is needed to always have the null/empty filter
 				content.add(EditorComponent.EMPTY_FILTER);
+				contentSet.add(EditorComponent.EMPTY_FILTER);
 			}
 			if (stringContent != null) {
 				if (stringContent == content) {
@@ -178,76 +217,156 @@ class OptionsListModel extends AbstractListModel {
 					// create a separate content for stringContent
 					for (Object o : addedContent) {
 						if (!(o instanceof String)) {
-							stringContent = new ArrayList(content);
+							stringContent = new ArrayList<Object>(content);
+							stringSet = new HashSet<Object>(contentSet);
 							break;
 						}
 					}
 				}
+				List<String> addedStrings = new ArrayList<String>();
 				for (Object o : addedContent) {
-					addStringContent(formatter.format(o));
+					String s = formatOption(o);
+					if (stringSet.add(s)) {
+						addedStrings.add(s);
+					}
 				}
+				addStringContent(addedStrings);
 			}
 			if (stringContent != content) {
 				for (Object o : addedContent) {
-					if (!content.contains(o)) {
+					if (contentSet.add(o)) {
 						content.add(o);
 					}
 				}
 			}
-			fireContentsChanged(this, 0, getSize());
-		}
-	}
-
-	/** Adds an string into the proper place (order) */
-	private void addStringContent(String s) {
-		int position = 0;
-		for (Object o : stringContent) {
-			int compare = ((String) o).compareTo(s);
-			if (compare == 0) {
-				return;
-			}
-			if (compare > 0) {
-				stringContent.add(position, s);
-				return;
+			int newSize = getSize();
+			if (newSize > size) {
+				if (stringContent == null) {
+					fireIntervalAdded(this, size, newSize - 1);
+				} else {
+					fireContentsChanged(this, 0, newSize - 1);
+				}
 			}
-			position++;
 		}
-		stringContent.add(s);
 	}
 
-	/** Creation of the Match, for text based, sorted content */
-	private PopupComponent.Match findOnSortedContent(String strStart, boolean fullMatch) {
-		PopupComponent.Match ret = new PopupComponent.Match();
-		if (stringContent.isEmpty()) {
-			ret.index = -1;
+	/** 
+	 * Removes the given options. If the content is text-based, the String of a removed option
+	 * is kept while any other option is converted to the same String.<br>
+	 * A single change event is sent, if any option is removed.
+	 */
+	public void removeContent(Collection<?> removedContent) {
+		int size = getSize();
+		Set<String> removedStrings = new HashSet<String>();
+		if (stringContent == content) {
+			// the content is made of the Strings themselves
+			for (Object o : removedContent) {
+				String s = formatOption(o);
+				if (!EditorComponent.EMPTY_FILTER.equals(s) && stringSet.remove(s)) {
+					removedStrings.add(s);
+				}
+			}
 		} else {
-			ret.len = strStart.length();
-			ret.exact = ret.len == 0;
-			int originalLen = ret.len;
-			while (ret.len > 0) {
-				for (Object o : stringContent) {
-					String os = (String) o;
-					int osLength = os.length();
-					if (osLength >= ret.len) {
-						String cmpStr = os.substring(0, ret.len); 
-						int cmp = ignoreCase? cmpStr.compareToIgnoreCase(strStart) : cmpStr.compareTo(strStart);
-						if (cmp == 0) {
-							ret.exact = osLength == originalLen;
-							return ret;
-						} else if (cmp > 0) {
+			Set<Object> removedObjects = new HashSet<Object>();
+			for (Object o : removedContent) {
+				if (!EditorComponent.EMPTY_FILTER.equals(o) && contentSet.remove(o)) {
+					removedObjects.add(o);
+				}
+			}
+			if (!removedObjects.isEmpty()) {
+				content.removeAll(removedObjects);
+				if (stringContent != null) {
+					for (Object o : removedObjects) {
+						removedStrings.add(formatOption(o));
+					}
+					removedStrings.remove(EditorComponent.EMPTY_FILTER);
+					for (Object o : content) {
+						if (removedStrings.isEmpty()) {
 							break;
 						}
+						removedStrings.remove(formatOption(o));
 					}
-					++ret.index;
+					stringSet.removeAll(removedStrings);
 				}
-				if (fullMatch) {
-					ret.index = -1;
-					break;
+			}
+		}
+		if (!removedStrings.isEmpty()) {
+			stringContent.removeAll(removedStrings);
+		}
+		if (getSize() < size) {
+			contentPositions = null;
+			prefixIndex = null;
+			if (content.size() == 1) {
+				// only the null/empty filter remains
+				resetContent(stringContent == content);
+			}
+			fireContentsChanged(this, 0, size - 1);
+		}
+	}
+
+	/** 
+	 * Adds new Strings, not yet in the content, into their proper place (order). A few Strings
+	 * are inserted directly, otherwise they are sorted and merged with the content.
+	 */
+	private void addStringContent(List<String> addedStrings) {
+		int added = addedStrings.size();
+		int size = stringContent.size();
+		if (added * MERGE_RATIO < size) {
+			for (String s : addedStrings) {
+				stringContent.add(lowerBound(s), s);
+			}
+		} else if (added > 0) {
+			Collections.sort(addedStrings);
+			List<Object> merged = new ArrayList<Object>(size + added);
+			int i = 0;
+			int j = 0;
+			while (i < size && j < added) {
+				String current = (String) stringContent.get(i);
+				String next = addedStrings.get(j);
+				if (current.compareTo(next) < 0) {
+					merged.add(current);
+					i++;
+				} else {
+					merged.add(next);
+					j++;
 				}
-				ret.index = 0;
-				strStart = strStart.substring(0, --ret.len);
+			}
+			merged.addAll(stringContent.subList(i, size));
+			merged.addAll(addedStrings.subList(j, added));
+			if (stringContent == content) {
+				content = merged;
+			}
+			stringContent = merged;
+		}
+	}
+
+	/** Discards all the content, which is text-based if specified */
+	private void resetContent(boolean sharedStringContent) {
+		content = new ArrayList<Object>();
+		contentSet = new HashSet<Object>();
+		contentPositions = null;
+		prefixIndex = null;
+		if (sharedStringContent) {
+			stringContent = content;
+			stringSet = contentSet;
+		} else if (stringContent != null) {
+			stringContent = new ArrayList<Object>();
+			stringSet = new HashSet<Object>();
+		}
+	}
+
+	/** Returns the position of the first string not lower than the given one */
+	private int lowerBound(String s) {
+		int low = 0;
+		int high = stringContent.size();
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (((String) stringContent.get(mid)).compareTo(s) < 0) {
+				low = mid + 1;
+			} else {
+				high = mid;
 			}
 		}
-		return ret;
+		return low;
 	}
 }
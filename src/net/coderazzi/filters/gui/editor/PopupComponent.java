@@ -327,6 +327,13 @@ abstract class PopupComponent implements PopupMenuListener{
 		reconfigureGui();
 	}
 
+	/** Removes content from the options list */
+	public void removeOptions(Collection<?> options) {
+		optionsModel.removeContent(options);
+		fixMaxHistory();
+		reconfigureGui();
+	}
+
 	/**
 	 * Selects the first element in the focused list. If it is already on the
 	 * first element, or forceJump is true, selects the first element on the
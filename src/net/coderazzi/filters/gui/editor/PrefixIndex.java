@@ -0,0 +1,175 @@
+/**
+ * Author:  Luis M Pena  ( lu@coderazzi.net )
+ * License: MIT License
+ *
+ * Copyright (c) 2007 Luis M. Pena  -  lu@coderazzi.net
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.coderazzi.filters.gui.editor;
+
+import java.util.List;
+
+/**
+ * Prefix index on the Strings of a list, to find the best match to a given text, as required by
+ * {@link PopupComponent#selectBestMatch(Object, boolean)}, in time proportional to the length of
+ * the text.<br>
+ * It is a trie, stored in arrays, where each node keeps the position in the list of the first 
+ * String starting with the node's prefix, and of the first String equal to the prefix. If case
+ * is ignored, the characters are folded before being indexed.<br>
+ * The index is not updated: it must be recreated if the list changes.
+ */
+class PrefixIndex {
+
+	private static final int ROOT = 0;
+	private List<?> content;
+	private boolean ignoreCase;
+	/** Number of nodes in the trie, and, per node, its character */
+	private int nodes;
+	private char[] labels;
+	/** First child and next sibling of each node, or -1 */
+	private int[] children;
+	private int[] siblings;
+	/** Position of the first String starting with / equal to the node's prefix, or -1 */
+	private int[] firsts;
+	private int[] exacts;
+
+	/** Creates the index of the Strings in the given list; other objects are not indexed */
+	public PrefixIndex(List<?> content, boolean ignoreCase) {
+		int capacity = 16 + 4 * content.size();
+		this.content = content;
+		this.ignoreCase = ignoreCase;
+		this.labels = new char[capacity];
+		this.children = new int[capacity];
+		this.siblings = new int[capacity];
+		this.firsts = new int[capacity];
+		this.exacts = new int[capacity];
+		createNode((char) 0);
+		int index = 0;
+		for (Object o : content) {
+			if (o instanceof String) {
+				add((String) o, index);
+			}
+			++index;
+		}
+	}
+
+	/**
+	 * Returns the best match on the list for the given text: the first String starting with the
+	 * longest possible prefix of the text (or with the whole text, if fullMatch is specified).
+	 * If preferEqual is specified, a String equal to the text is returned before any other.
+	 */
+	public PopupComponent.Match getMatch(String text, boolean fullMatch, boolean preferEqual) {
+		PopupComponent.Match ret = new PopupComponent.Match();
+		if (content.isEmpty()) {
+			ret.index = -1;
+			return ret;
+		}
+		int originalLen = text.length();
+		int node = ROOT;
+		while (ret.len < originalLen) {
+			int child = getChild(node, fold(text.charAt(ret.len)));
+			if (child == -1) {
+				break;
+			}
+			node = child;
+			++ret.len;
+		}
+		if (ret.len == originalLen && preferEqual && exacts[node] != -1) {
+			ret.index = exacts[node];
+			ret.exact = true;
+		} else if (originalLen == 0) {
+			ret.exact = true;
+		} else if (ret.len == originalLen || (!fullMatch && ret.len > 0)) {
+			ret.index = firsts[node];
+			ret.exact = ((String) content.get(ret.index)).length() == originalLen;
+		} else if (fullMatch) {
+			ret.index = -1;
+			ret.len = originalLen;
+		}
+		return ret;
+	}
+
+	/** Indexes the String at the given position, after any other indexed String */
+	private void add(String s, int index) {
+		int node = ROOT;
+		int len = s.length();
+		for (int i = 0; i < len; i++) {
+			char c = fold(s.charAt(i));
+			int child = getChild(node, c);
+			if (child == -1) {
+				child = createNode(c);
+				siblings[child] = children[node];
+				children[node] = child;
+			}
+			node = child;
+			if (firsts[node] == -1) {
+				firsts[node] = index;
+			}
+		}
+		if (exacts[node] == -1) {
+			exacts[node] = index;
+		}
+	}
+
+	/** Returns the child of the given node with the given character, or -1 if none */
+	private int getChild(int node, char c) {
+		int child = children[node];
+		while (child != -1 && labels[child] != c) {
+			child = siblings[child];
+		}
+		return child;
+	}
+
+	/** Creates a node without children, growing the arrays if needed */
+	private int createNode(char c) {
+		if (nodes == labels.length) {
+			int capacity = nodes + (nodes >> 1) + 1;
+			labels = grow(labels, capacity);
+			children = grow(children, capacity);
+			siblings = grow(siblings, capacity);
+			firsts = grow(firsts, capacity);
+			exacts = grow(exacts, capacity);
+		}
+		labels[nodes] = c;
+		children[nodes] = -1;
+		siblings[nodes] = -1;
+		firsts[nodes] = -1;
+		exacts[nodes] = -1;
+		return nodes++;
+	}
+
+	/** Folds the character if case is ignored, as done by String.compareToIgnoreCase */
+	private char fold(char c) {
+		return ignoreCase? Character.toLowerCase(Character.toUpperCase(c)) : c;
+	}
+
+	private static char[] grow(char[] array, int capacity) {
+		char[] ret = new char[capacity];
+		System.arraycopy(array, 0, ret, 0, array.length);
+		return ret;
+	}
+
+	private static int[] grow(int[] array, int capacity) {
+		int[] ret = new int[capacity];
+		System.arraycopy(array, 0, ret, 0, array.length);
+		return ret;
+	}
+}
@@ -25,15 +25,27 @@
 
 package net.coderazzi.filters.parser;
 
+import java.text.DateFormat;
 import java.text.Format;
 import java.util.Calendar;
 import java.util.Comparator;
 import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+import net.coderazzi.filters.artifacts.RowFilter;
 
 /**
  * Class to deduce a sensible {@link Comparator} for {@link Date} instances.<br>
+ * Dates are compared through a key computed from their time, ignoring the fields that the
+ * format does not display. The implementations are thread safe, and do not allocate objects
+ * on each comparison.<br>
+ * The keys can be also cached by the filters, as {@link RowFilter.IKeyGenerator}
  */
-abstract public class DateComparator implements Comparator<Date>{
+abstract public class DateComparator implements Comparator<Date>, RowFilter.IKeyGenerator{
+	
+	static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+	
 	/**
 	 * Factory constructor, returning an instance suitable for the given format.
 	 */
@@ -42,14 +54,20 @@ abstract public class DateComparator implements Comparator<Date>{
 		// etc) and check the change on the parsed instance. If changing, for example, the
 		// seconds, does not produce a different formatted string, the comparator will not pay
 		// attention to the seconds, and so on
-		Calendar calendar = Calendar.getInstance();
+		Calendar calendar;
+		if (dateFormat instanceof DateFormat){
+			//use the same calendar -and time zone- used by the format
+			calendar = (Calendar) ((DateFormat) dateFormat).getCalendar().clone();
+		} else {
+			calendar = Calendar.getInstance();
+		}
 		calendar.setTimeInMillis(new Date().getTime());
 		if (change(calendar, dateFormat, Calendar.MILLISECOND)){
 			//Milliseconds affect the output, full comparison
 			return new DateComparator() {
 				@Override
-				public long diff(Date o1, Date o2) {
-					return o1.compareTo(o2);
+				public long getKey(long time) {
+					return time;
 				}
 			};
 		} 
@@ -70,18 +88,21 @@ abstract public class DateComparator implements Comparator<Date>{
 			//nothing affects the output, great formatter!
 			return new DateComparator() {		
 				@Override
-				public long diff(Date o1, Date o2) {
+				public long getKey(long time) {
 					return 0;
 				}
 			};
 		}
-		return new TimeComparator(divisor);
+		return new TimeComparator(divisor, calendar.getTimeZone());
 	}
 	static private boolean change(Calendar c, Format f, int field){
-		c.set(field, 10);
-		String sf = f.format(c.getTime());
-		c.set(field, 11);
-		return !sf.equals(f.format(c.getTime()));
+		//the format can be in use by filters evaluated on other threads
+		synchronized (f) {
+			c.set(field, 10);
+			String sf = f.format(c.getTime());
+			c.set(field, 11);
+			return !sf.equals(f.format(c.getTime()));
+		}
 	}
 	public int compare(Date o1, Date o2) {
 		if (o1==null){
@@ -90,42 +111,100 @@ abstract public class DateComparator implements Comparator<Date>{
 		if (o2==null){
 			return 1;
 		}
-		long diff = diff(o1, o2);
-		return diff==0? 0 : diff>0? 1 : -1;
+		long k1 = getKey(o1.getTime());
+		long k2 = getKey(o2.getTime());
+		return k1==k2? 0 : k1>k2? 1 : -1;
+	}
+	public long diff(Date o1, Date o2){
+		return getKey(o1.getTime()) - getKey(o2.getTime());
+	}
+	
+	/**
+	 * Returns the key associated to the given time (milliseconds since the epoch): dates are
+	 * compared by their keys, which are equal if the differences between the dates are not
+	 * relevant for the format. It can be used to precompute the comparison of many dates.
+	 */
+	public abstract long getKey(long time);
+	
+	/** {@link RowFilter.IKeyGenerator} method, the value must be a {@link Date} */
+	public long getKey(Object value){
+		return getKey(((Date) value).getTime());
+	}
+
+	/** Division rounding towards negative infinity, to handle dates before the epoch */
+	static long floorDiv(long dividend, long divisor){
+		long ret = dividend / divisor;
+		return (dividend % divisor < 0)? ret - 1 : ret;
 	}
-	public abstract long diff(Date o1, Date o2);
 
 	/**
 	 * DateComparator when the difference relies on time fields (seconds, minutes, hours).
-	 * We divide the time to set out the unneeded information, before comparing
+	 * We divide the local time to set out the unneeded information, before comparing
 	 */
     static class TimeComparator extends DateComparator{
     	int divisor;
-    	public TimeComparator(int divisor) {
+    	TimeZone zone;
+    	public TimeComparator(int divisor, TimeZone zone) {
 			this.divisor=divisor;
+			this.zone=(TimeZone) zone.clone();
 		}
     	@Override
-		public long diff(Date o1, Date o2){
-			return o1.getTime()/divisor - o2.getTime()/divisor;
+		public long getKey(long time){
+			return floorDiv(time + zone.getOffset(time), divisor);
 		}    	
     }
     
-    /** DateComparator that simply compares the year's fields */
+    /** 
+     * DateComparator that simply compares the year's fields.<br>
+     * The fields are computed arithmetically from the day in the calendar's time zone; the 
+     * calendar itself -one copy per thread- is only used for dates before the Gregorian
+     * calendar was adopted, or if the calendar is not Gregorian.
+     */
     static class YearComparator extends DateComparator{
-    	Calendar calendar;
-    	public YearComparator(Calendar calendar) {
-			this.calendar=calendar;
+    	TimeZone zone;
+    	long gregorianChange = Long.MAX_VALUE;
+    	ThreadLocal<Calendar> calendars;
+    	public YearComparator(final Calendar calendar) {
+    		this.zone=(TimeZone) calendar.getTimeZone().clone();
+    		if (calendar instanceof GregorianCalendar){
+    			//days start after the change, as the zone offset is not yet applied  
+    			gregorianChange = ((GregorianCalendar) calendar).getGregorianChange().getTime() 
+    				+ MILLIS_PER_DAY;
+    		}
+    		calendars = new ThreadLocal<Calendar>(){
+    			@Override protected Calendar initialValue() {
+    				return (Calendar) calendar.clone();
+    			}
+    		};
 		}
+    	
     	@Override
-		public long diff(Date o1, Date o2){
-    		calendar.setTime(o1);
-    		long base = time();
-    		calendar.setTime(o2);
-			return base - time();
+		public long getKey(long time){
+    		if (time >= gregorianChange){
+    			long days = floorDiv(time + zone.getOffset(time), MILLIS_PER_DAY) + 719468;
+    			//civil date from days, using eras of 400 years, with years starting in March 
+    			long era = floorDiv(days, 146097);
+    			long dayOfEra = days - era * 146097;
+    			long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 
+    					- dayOfEra / 146096) / 365;
+    			long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+    			long shiftedMonth = (5 * dayOfYear + 2) / 153;
+    			long month = shiftedMonth < 10 ? shiftedMonth + 2 : shiftedMonth - 10;
+    			long year = yearOfEra + era * 400 + (month < 2? 1 : 0);
+    			return key(year, month);
+    		}
+    		Calendar calendar = calendars.get();
+    		calendar.setTimeInMillis(time);
+    		long year = calendar.get(Calendar.YEAR);
+    		if (calendar.get(Calendar.ERA) == GregorianCalendar.BC){
+    			year = 1 - year;
+    		}
+    		return key(year, calendar.get(Calendar.MONTH));
 		}
     	
-    	long time(){
-    		return calendar.get(Calendar.YEAR);
+    	/** Returns the key for the given year and month (0 based) */
+    	long key(long year, long month){
+    		return year;
     	}
     }
     /** DateComparator that simply compares the year and month's fields */
@@ -134,18 +213,19 @@ abstract public class DateComparator implements Comparator<Date>{
 			super(calendar);
 		}
     	@Override
-    	long time(){
-    		return calendar.get(Calendar.YEAR) * 12 + calendar.get(Calendar.MONTH);
+    	long key(long year, long month){
+    		return year * 12 + month;
     	}
     }
     /** DateComparator that simply compares the year/month/day's fields */
-    static class DayMonthYearComparator extends YearComparator{
+    static class DayMonthYearComparator extends DateComparator{
+    	TimeZone zone;
     	public DayMonthYearComparator(Calendar calendar) {
-			super(calendar);
+			this.zone=(TimeZone) calendar.getTimeZone().clone();
 		}
     	@Override
-    	long time(){
-    		return calendar.get(Calendar.YEAR) * 400 + calendar.get(Calendar.DAY_OF_YEAR);
+    	public long getKey(long time){
+    		return floorDiv(time + zone.getOffset(time), MILLIS_PER_DAY);
     	}
     }
-}
\ No newline at end of file
+}
@@ -15,7 +15,11 @@ import java.util.regex.PatternSyntaxException;
 import javax.swing.table.TableModel;
 
 import net.coderazzi.filters.IFilterTextParser;
+import net.coderazzi.filters.artifacts.ColumnIndex;
+import net.coderazzi.filters.artifacts.FilterProgram;
 import net.coderazzi.filters.artifacts.RowFilter;
+import net.coderazzi.filters.artifacts.RowSelection;
+import net.coderazzi.filters.artifacts.TrigramIndex;
 
 
 /**
@@ -122,7 +126,7 @@ public class FilterTextParser implements IFilterTextParser {
     }
 
     public void setTableModel(TableModel model) {
-        TableModel oldModel = model;
+        TableModel oldModel = this.model;
         this.model = model;
         propertiesHandler.firePropertyChange("tableModel", oldModel, model);
     }
@@ -148,7 +152,9 @@ public class FilterTextParser implements IFilterTextParser {
      * Sets the {@link Format} for the given Class. If the class belongs to
      * the {@link Date} hierarchy, it creates automatically a {@link Comparator}
      * for it, based on the {@link DateComparator} class, unless one
-     * comparator has been already set.
+     * comparator has been already set.<br>
+     * Formatted values can be cached by the filters, so a format should not be modified once
+     * set: to change it, set a new instance.
      */
     public void setFormat(Class<?> c,
                           Format format) {
@@ -212,6 +218,42 @@ public class FilterTextParser implements IFilterTextParser {
             }
         };
 
+    /**
+     * Returns the given comparator as a comparator of any object: the parsed operand and the
+     * column values are only known to be of the class associated to the comparator at runtime
+     */
+    @SuppressWarnings("unchecked")
+    static Comparator<Object> getObjectComparator(Comparator<?> comparator) {
+        return (Comparator<Object>) comparator;
+    }
+
+    /** Keys of Integer, Short and Byte values, to index them */
+    static RowFilter.IKeyGenerator intKeys = new RowFilter.IKeyGenerator() {
+            public long getKey(Object value) {
+                return ((Number) value).intValue();
+            }
+        };
+
+    /** Keys of Long values, to index them */
+    static RowFilter.IKeyGenerator longKeys = new RowFilter.IKeyGenerator() {
+            public long getKey(Object value) {
+                return ((Number) value).longValue();
+            }
+        };
+
+    /** Keys of Double and Float values, ordered as {@link Double#compare(double, double)} */
+    static RowFilter.IKeyGenerator doubleKeys = new RowFilter.IKeyGenerator() {
+            public long getKey(Object value) {
+                return getDoubleKey(((Number) value).doubleValue());
+            }
+        };
+
+    static long getDoubleKey(double value) {
+        long bits = Double.doubleToLongBits(value);
+        // negative values have their magnitude bits flipped, to be ordered as longs
+        return bits ^ ((bits >> 63) & Long.MAX_VALUE);
+    }
+
     /**
      * Internal interface, to be implemented by all operands
      */
@@ -221,6 +263,9 @@ public class FilterTextParser implements IFilterTextParser {
                          int modelPosition) throws ParseException;
     }
 
+    /** Cost of evaluating a row, relative to selecting it from an index */
+    static final int INDEX_COST_RATIO = 8;
+
     abstract class ComparisonOperand implements IOperand {
         protected Comparator defaultComparator;
 
@@ -246,18 +291,118 @@ public class FilterTextParser implements IFilterTextParser {
                     comparator = defaultComparator;
                 }
             }
-            Object o = format.parseObject(right);
+            Object o;
+            // formats are not thread safe, and can be used meanwhile by filters evaluated in
+            // background or in parallel
+            synchronized (format) {
+                o = format.parseObject(right);
+            }
             if (o == null) {
                 throw new ParseException("", 0);
             }
-            return createOperator(o, comparator, modelPosition);
+            if (comparator == comparatorOfComparables) {
+                RowFilter ret = createNumericOperator(o, c, modelPosition);
+                if (ret != null) {
+                    return ret;
+                }
+            } else if ((comparator instanceof DateComparator) && (o instanceof Date)) {
+                return createDateOperator((Date) o, (DateComparator) comparator, modelPosition);
+            }
+            return createOperator(o, getObjectComparator(comparator), modelPosition);
+        }
+
+        /**
+         * Creates an operator comparing directly primitive values, reading them with the typed
+         * accessors of the {@link RowFilter.Entry}; it returns null unless the column class, and
+         * the parsed operand, is a Integer, Short, Byte, Long, Float or Double.
+         */
+        protected RowFilter createNumericOperator(Object right,
+                                                  Class<?> c,
+                                                  final int modelPosition) {
+            if (!c.equals(right.getClass())) {
+                return null;
+            }
+            if ((right instanceof Integer) || (right instanceof Short) || (right instanceof Byte)) {
+                final int value = ((Number) right).intValue();
+                return new ComparisonRowFilter(right, getObjectComparator(comparatorOfComparables),
+                        modelPosition, intKeys, value) {
+                        @Override public boolean include(Entry entry) {
+                            if (entry.isNull(modelPosition)) {
+                                return false;
+                            }
+                            int left = entry.getInt(modelPosition);
+                            return matches((left < value) ? -1 : ((left == value) ? 0 : 1));
+                        }
+
+                        @Override public void compile(FilterProgram program) {
+                            program.addIntComparison(modelPosition, value, getMatches());
+                        }
+                    };
+            }
+            if (right instanceof Long) {
+                final long value = ((Long) right).longValue();
+                return new ComparisonRowFilter(right, getObjectComparator(comparatorOfComparables),
+                        modelPosition, longKeys, value) {
+                        @Override public boolean include(Entry entry) {
+                            if (entry.isNull(modelPosition)) {
+                                return false;
+                            }
+                            long left = entry.getLong(modelPosition);
+                            return matches((left < value) ? -1 : ((left == value) ? 0 : 1));
+                        }
+
+                        @Override public void compile(FilterProgram program) {
+                            program.addLongComparison(modelPosition, value, getMatches());
+                        }
+                    };
+            }
+            if ((right instanceof Double) || (right instanceof Float)) {
+                final double value = ((Number) right).doubleValue();
+                return new ComparisonRowFilter(right, getObjectComparator(comparatorOfComparables),
+                        modelPosition, doubleKeys, getDoubleKey(value)) {
+                        @Override public boolean include(Entry entry) {
+                            return !entry.isNull(modelPosition)
+                                && matches(Double.compare(entry.getDouble(modelPosition), value));
+                        }
+
+                        @Override public void compile(FilterProgram program) {
+                            program.addDoubleComparison(modelPosition, value, getMatches());
+                        }
+                    };
+            }
+            return null;
+        }
+
+        /**
+         * Creates an operator comparing the keys of the dates, as defined by the
+         * {@link DateComparator}: the key of the operand is computed only once, and the keys of
+         * the column values can be cached by the {@link RowFilter.Entry}.
+         */
+        protected RowFilter createDateOperator(Date right,
+                                               final DateComparator dateComparator,
+                                               final int modelPosition) {
+            final long value = dateComparator.getKey(right.getTime());
+            return new ComparisonRowFilter(right, getObjectComparator(dateComparator),
+                    modelPosition, dateComparator, value) {
+                    @Override public boolean include(Entry entry) {
+                        if (entry.isNull(modelPosition)) {
+                            return false;
+                        }
+                        long left = entry.getKey(modelPosition, dateComparator);
+                        return matches((left < value) ? -1 : ((left == value) ? 0 : 1));
+                    }
+
+                    @Override public void compile(FilterProgram program) {
+                        program.addKeyComparison(modelPosition, dateComparator, value,
+                            getMatches());
+                    }
+                };
         }
 
         protected RowFilter createOperator(final Object right,
-                                           final Comparator comparator,
+                                           final Comparator<Object> comparator,
                                            final int modelPosition) {
-            return new RowFilter() {
-                    @SuppressWarnings("unchecked")
+            return new ComparisonRowFilter(right, comparator, modelPosition) {
                     @Override public boolean include(Entry entry) {
                         Object left = entry.getValue(modelPosition);
                         return (left != null) && matches(comparator.compare(left, right));
@@ -265,6 +410,114 @@ public class FilterTextParser implements IFilterTextParser {
                 };
         }
 
+        /**
+         * Filter created by this operand, comparing the column values with the given operand.
+         * It can be narrower than a filter on the same column created by any comparison operand
+         * with the same comparator: for example, &quot;&gt; 5&quot; is narrower than
+         * &quot;&gt;= 3&quot;.<br>
+         * If the values can be compared through keys, the filter uses any available index on the
+         * column, instead of evaluating each row.
+         */
+        abstract class ComparisonRowFilter extends RowFilter {
+            Object right;
+            Comparator<Object> comparator;
+            int modelPosition;
+            RowFilter.IKeyGenerator keyGenerator;
+            long key;
+
+            ComparisonRowFilter(Object right,
+                                Comparator<Object> comparator,
+                                int modelPosition) {
+                this.right = right;
+                this.comparator = comparator;
+                this.modelPosition = modelPosition;
+            }
+
+            ComparisonRowFilter(Object right,
+                                Comparator<Object> comparator,
+                                int modelPosition,
+                                RowFilter.IKeyGenerator keyGenerator,
+                                long key) {
+                this(right, comparator, modelPosition);
+                this.keyGenerator = keyGenerator;
+                this.key = key;
+            }
+
+            /**
+             * Selects the rows using the column index, if available, unless it would select many
+             * more rows than those to evaluate: setting a row is much cheaper than evaluating it,
+             * but not free.
+             */
+            @Override public void include(Rows rows,
+                                          RowSelection candidates,
+                                          RowSelection result) {
+                ColumnIndex index = (keyGenerator == null)
+                    ? null : rows.getColumnIndex(modelPosition, keyGenerator);
+                if (index != null) {
+                    int lower = index.lowerBound(key);
+                    int upper = index.upperBound(key);
+                    int size = index.getSize();
+                    int selected = (matches(-1) ? lower : 0) + (matches(0) ? (upper - lower) : 0)
+                        + (matches(1) ? (size - upper) : 0);
+                    int evaluated = (candidates == null) ? rows.getSize() : candidates.getCount();
+                    if (selected <= (INDEX_COST_RATIO * (long) evaluated)) {
+                        if (matches(-1)) {
+                            index.select(0, lower, result);
+                        }
+                        if (matches(0)) {
+                            index.select(lower, upper, result);
+                        }
+                        if (matches(1)) {
+                            index.select(upper, size, result);
+                        }
+                        if (candidates != null) {
+                            result.and(candidates);
+                        }
+                        return;
+                    }
+                }
+                super.include(rows, candidates, result);
+            }
+
+            ComparisonOperand getOperand() {
+                return ComparisonOperand.this;
+            }
+
+            /**
+             * Returns the comparison results matched by the operand, as expected by the
+             * {@link FilterProgram}
+             */
+            int getMatches() {
+                return (matches(-1) ? FilterProgram.LOWER : 0)
+                    | (matches(0) ? FilterProgram.EQUAL : 0)
+                    | (matches(1) ? FilterProgram.GREATER : 0);
+            }
+
+            @Override public boolean isNarrowerThan(RowFilter previous) {
+                if (!(previous instanceof ComparisonRowFilter)) {
+                    return false;
+                }
+                ComparisonRowFilter other = (ComparisonRowFilter) previous;
+                if ((other.modelPosition != modelPosition) || (other.comparator != comparator)
+                        || !right.getClass().equals(other.right.getClass())) {
+                    return false;
+                }
+                ComparisonOperand operand = other.getOperand();
+                int comparison = comparator.compare(right, other.right);
+                if (comparison == 0) {
+                    // any comparison accepted now must be accepted by the previous operand
+                    return (!matches(-1) || operand.matches(-1))
+                        && (!matches(0) || operand.matches(0))
+                        && (!matches(1) || operand.matches(1));
+                }
+                if (comparison > 0) {
+                    // only values above the new operand are accepted, all above the previous
+                    return !matches(-1) && operand.matches(1);
+                }
+                return !matches(1) && operand.matches(-1);
+            }
+        }
+
         protected RowFilter createStringOperator(final String right,
                                                  Format formatter,
                                                  int modelPosition) {
@@ -293,6 +546,28 @@ public class FilterTextParser implements IFilterTextParser {
             // o1 is never null
             return o1.equals(o2) ? 0 : 1;
         }
+
+        /**
+         * Compares the values through {@link RowFilter.Entry#isEqual(int, Object)} when the
+         * equality is the comparison itself, so that encoded columns compare codes.
+         */
+        @Override protected RowFilter createOperator(final Object right,
+                                                     final Comparator<Object> comparator,
+                                                     final int modelPosition) {
+            if (comparator != this) {
+                return super.createOperator(right, comparator, modelPosition);
+            }
+            return new ComparisonRowFilter(right, comparator, modelPosition) {
+                    @Override public boolean include(Entry entry) {
+                        return !entry.isNull(modelPosition)
+                            && (equals == entry.isEqual(modelPosition, right));
+                    }
+
+                    @Override public void compile(FilterProgram program) {
+                        program.addEquality(modelPosition, right, equals);
+                    }
+                };
+        }
     }
 
 
@@ -307,8 +582,7 @@ public class FilterTextParser implements IFilterTextParser {
                                 Class<?> c,
                                 final int modelPosition) throws ParseException {
             final Pattern pattern = getPattern(right);
-            Format format = String.class.equals(c) ? null : formatters.get(c);
-            return new StringRowFilter(modelPosition, format) {
+            return new StringRowFilter(modelPosition, getFormat(c)) {
 
                     @Override boolean include(String left) {
                         return equals == pattern.matcher(left).matches();
@@ -316,6 +590,10 @@ public class FilterTextParser implements IFilterTextParser {
                 };
         }
 
+        protected Format getFormat(Class<?> c) {
+            return String.class.equals(c) ? null : formatters.get(c);
+        }
+
         protected Pattern getPattern(String right) throws ParseException {
             try {
                 return Pattern.compile(right, ignoreCase ? Pattern.CASE_INSENSITIVE : 0);
@@ -331,6 +609,13 @@ public class FilterTextParser implements IFilterTextParser {
             super(equals);
         }
 
+        @Override public RowFilter create(String right,
+                                          Class<?> c,
+                                          int modelPosition) throws ParseException {
+            return new WildcardRowFilter(modelPosition, getFormat(c), right, getPattern(right),
+                    equals, ignoreCase);
+        }
+
         @Override protected Pattern getPattern(String right) throws ParseException {
             return super.getPattern(convertWilcardExpressionToRegularExpression(right));
         }
@@ -346,7 +631,7 @@ public class FilterTextParser implements IFilterTextParser {
                     case '\\':
 
                         if (escaped)
-                            sb.append("\\");
+                            sb.append("\\\\");
 
                         escaped = !escaped;
 
@@ -402,7 +687,293 @@ public class FilterTextParser implements IFilterTextParser {
         }
     }
 
-    abstract class StringRowFilter extends RowFilter {
+    /**
+     * Filter matching a wildcard expression, which is narrower than a previous wildcard filter on
+     * the same column whose expression matches any string matched now; for example,
+     * &quot;~ abc*&quot; is narrower than &quot;~ ab*&quot;.<br>
+     * The most common expressions (exact text, prefix*, *suffix and *contains*) are matched
+     * directly on the string, without using the regular expression.
+     */
+    static class WildcardRowFilter extends StringRowFilter {
+        /** Shape of an expression that must be matched using the regular expression */
+        static final int REGULAR_EXPRESSION = 0;
+        /** Shape of an expression without wildcards */
+        static final int EXACT = 1;
+        /** Shape of an expression like prefix* */
+        static final int PREFIX = 2;
+        /** Shape of an expression like *suffix */
+        static final int SUFFIX = 3;
+        /** Shape of an expression like *contains* */
+        static final int CONTAINS = 4;
+
+        String expression;
+        Pattern pattern;
+        boolean equals;
+        boolean ignoreCase;
+        int shape;
+        /** the text to match, without wildcards, in lower case if ignoring case */
+        char[] literal;
+        /** longest text without wildcards in the expression, if it can be searched by trigrams */
+        String indexText;
+
+        WildcardRowFilter(int modelPosition,
+                          Format formatter,
+                          String expression,
+                          Pattern pattern,
+                          boolean equals,
+                          boolean ignoreCase) {
+            super(modelPosition, formatter);
+            this.expression = expression;
+            this.pattern = pattern;
+            this.equals = equals;
+            this.ignoreCase = ignoreCase;
+            compile();
+        }
+
+        @Override boolean include(String left) {
+            return equals == ((shape == REGULAR_EXPRESSION) ? pattern.matcher(left).matches()
+                                                           : matches(left));
+        }
+
+        /**
+         * Evaluates only the rows containing the trigrams of the longest text in the expression,
+         * if the column has a trigram index. Negated expressions are not indexed, as they match
+         * most rows.
+         */
+        @Override public void include(Rows rows,
+                                      RowSelection candidates,
+                                      RowSelection result) {
+            TrigramIndex index = (equals && (indexText != null))
+                ? rows.getTrigramIndex(modelPosition, formatter) : null;
+            RowSelection selected = (index == null) ? null : index.getCandidates(indexText);
+            if (selected == null) {
+                super.include(rows, candidates, result);
+            } else {
+                if (candidates != null) {
+                    selected.and(candidates);
+                }
+                rows.evaluate(this, selected, result);
+            }
+        }
+
+        /**
+         * Finds out the shape of the expression; if not handled directly, it is set to
+         * REGULAR_EXPRESSION. Literals with line terminators are always left to the regular
+         * expression.
+         */
+        private void compile() {
+            shape = REGULAR_EXPRESSION;
+            int[] tokens = tokenize(expression);
+            if (tokens == null) {
+                return;
+            }
+            int run = 0;
+            int longest = 0;
+            int longestEnd = 0;
+            for (int i = 0; i < tokens.length; i++) {
+                run = (tokens[i] < 0) ? 0 : (run + 1);
+                if (run > longest) {
+                    longest = run;
+                    longestEnd = i + 1;
+                }
+            }
+            if (longest >= TrigramIndex.GRAM_LENGTH) {
+                char[] text = new char[longest];
+                for (int i = 0; i < longest; i++) {
+                    text[i] = (char) tokens[longestEnd - longest + i];
+                }
+                indexText = new String(text);
+            }
+            int start = 0;
+            int end = tokens.length;
+            boolean leading = (end > 0) && (tokens[0] == ANY_SEQUENCE);
+            if (leading) {
+                start++;
+            }
+            boolean trailing = (end > start) && (tokens[end - 1] == ANY_SEQUENCE);
+            if (trailing) {
+                end--;
+            }
+            char[] text = new char[end - start];
+            for (int i = start; i < end; i++) {
+                int token = tokens[i];
+                if ((token < 0) || isLineTerminator(token)) {
+                    return;
+                }
+                text[i - start] = ignoreCase ? toLowerCase((char) token) : (char) token;
+            }
+            literal = text;
+            shape = leading ? (trailing ? CONTAINS : SUFFIX) : (trailing ? PREFIX : EXACT);
+        }
+
+        /**
+         * Matches the given text, with the same semantics as the regular expression: the
+         * wildcards do not match line terminators, and ignoring case only applies to US-ASCII
+         * characters.
+         */
+        boolean matches(CharSequence text) {
+            int length = text.length();
+            int match = length - literal.length;
+            if (match < 0) {
+                return false;
+            }
+            switch (shape) {
+
+                case EXACT:
+                    return (match == 0) && regionMatches(text, 0);
+
+                case PREFIX:
+                    return regionMatches(text, 0) && !hasLineTerminator(text, literal.length, length);
+
+                case SUFFIX:
+                    return regionMatches(text, match) && !hasLineTerminator(text, 0, match);
+
+                default:
+                    // the literal has no line terminators, so the whole text cannot have them
+                    if (hasLineTerminator(text, 0, length)) {
+                        return false;
+                    }
+                    for (int i = 0; i <= match; i++) {
+                        if (regionMatches(text, i)) {
+                            return true;
+                        }
+                    }
+                    return false;
+            }
+        }
+
+        private boolean regionMatches(CharSequence text,
+                                      int offset) {
+            for (int i = 0; i < literal.length; i++) {
+                char c = text.charAt(offset++);
+                if ((c != literal[i]) && !(ignoreCase && (toLowerCase(c) == literal[i]))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static boolean hasLineTerminator(CharSequence text,
+                                                 int from,
+                                                 int to) {
+            while (from < to) {
+                if (isLineTerminator(text.charAt(from++))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /** Lower case conversion, restricted -as the regular expression- to US-ASCII */
+        private static char toLowerCase(char c) {
+            return ((c >= 'A') && (c <= 'Z')) ? (char) (c + ('a' - 'A')) : c;
+        }
+
+        @Override public boolean isNarrowerThan(RowFilter previous) {
+            if (!(previous instanceof WildcardRowFilter)) {
+                return false;
+            }
+            WildcardRowFilter other = (WildcardRowFilter) previous;
+            if ((other.modelPosition != modelPosition) || (other.formatter != formatter)
+                    || (other.equals != equals) || (other.ignoreCase != ignoreCase)) {
+                return false;
+            }
+            // for negated expressions, the previous expression must be the narrower one
+            return equals ? covers(other.expression, expression, ignoreCase)
+                          : covers(expression, other.expression, ignoreCase);
+        }
+
+        /** Token matching any single character, except line terminators */
+        static final int ANY_CHAR = -1;
+
+        /** Token matching any sequence of characters, except line terminators */
+        static final int ANY_SEQUENCE = -2;
+
+        /**
+         * Returns true if any string matched by the specific wildcard expression is also matched
+         * by the general one. The check is conservative: it can return false for some
+         * expressions that indeed cover the specific one.
+         */
+        static boolean covers(String general,
+                              String specific,
+                              boolean ignoreCase) {
+            int[] g = tokenize(general);
+            int[] s = tokenize(specific);
+            if ((g == null) || (s == null)) {
+                return false;
+            }
+
+            // covered[j]: the general tokens processed so far match the first j specific tokens
+            boolean[] covered = new boolean[s.length + 1];
+            covered[0] = true;
+            for (int token : g) {
+                boolean[] next = new boolean[s.length + 1];
+                if (token == ANY_SEQUENCE) {
+                    next[0] = covered[0];
+                    for (int j = 1; j <= s.length; j++) {
+                        next[j] = covered[j] || (next[j - 1] && !isLineTerminator(s[j - 1]));
+                    }
+                } else {
+                    for (int j = 1; j <= s.length; j++) {
+                        int other = s[j - 1];
+                        boolean match;
+                        if (token == ANY_CHAR) {
+                            match = (other == ANY_CHAR) || ((other >= 0) && !isLineTerminator(other));
+                        } else {
+                            match = (other == token) ||
+                                (ignoreCase && (other >= 0) && (other < 128) && (token < 128)
+                                    && (Character.toLowerCase((char) other)
+                                        == Character.toLowerCase((char) token)));
+                        }
+                        next[j] = covered[j - 1] && match;
+                    }
+                }
+                covered = next;
+            }
+
+            return covered[s.length];
+        }
+
+        /**
+         * Splits a wildcard expression in tokens: the characters, or ANY_CHAR / ANY_SEQUENCE.
+         * It returns null for expressions that are not handled: those including surrogate
+         * characters.
+         */
+        private static int[] tokenize(String expression) {
+            int[] ret = new int[expression.length()];
+            int size = 0;
+            boolean escaped = false;
+            for (char c : expression.toCharArray()) {
+                if (Character.isHighSurrogate(c) || Character.isLowSurrogate(c)) {
+                    return null;
+                }
+                if ((c == '\\') && !escaped) {
+                    escaped = true;
+                } else {
+                    if (!escaped && (c == '*')) {
+                        ret[size++] = ANY_SEQUENCE;
+                    } else if (!escaped && (c == '?')) {
+                        ret[size++] = ANY_CHAR;
+                    } else {
+                        ret[size++] = c;
+                    }
+                    escaped = false;
+                }
+            }
+
+            int[] tokens = new int[size];
+            System.arraycopy(ret, 0, tokens, 0, size);
+
+            return tokens;
+        }
+
+        private static boolean isLineTerminator(int c) {
+            return (c == '\n') || (c == '\r') || (c == '\u0085') || (c == '\u2028')
+                || (c == '\u2029');
+        }
+    }
+
+    abstract static class StringRowFilter extends RowFilter {
         int modelPosition;
         Format formatter;
 
@@ -414,9 +985,7 @@ public class FilterTextParser implements IFilterTextParser {
         }
 
         @Override public boolean include(Entry entry) {
-            Object o = entry.getValue(modelPosition);
-            String left = (o == null) ? "" : ((formatter == null) ? o.toString() : formatter.format(o));
-            return include(left);
+            return include(entry.getStringValue(modelPosition, formatter));
         }
 
         abstract boolean include(String left);